@@ -23,10 +23,10 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.support.v7.preference.PreferenceManager;
 
-import org.mokee.mkparts.contributors.ContributorsCloudFragment;
 import org.mokee.mkparts.fingerprint.FingerprintShortcutUtils;
 import org.mokee.mkparts.gestures.TouchscreenGestureSettings;
 import org.mokee.mkparts.input.ButtonSettings;
+import org.mokee.mkparts.push.PushRegistrationJobService;
 
 public class BootReceiver extends BroadcastReceiver {
 
@@ -43,10 +43,9 @@ public class BootReceiver extends BroadcastReceiver {
 
         TouchscreenGestureSettings.restoreTouchscreenGestureStates(ctx);
 
-        // Extract the contributors database
-        ContributorsCloudFragment.extractContributorsCloudDatabase(ctx);
-
         FingerprintShortcutUtils.restoreState(ctx);
+
+        PushRegistrationJobService.scheduleInit(ctx);
     }
 
     private boolean hasRestoredTunable(Context context) {
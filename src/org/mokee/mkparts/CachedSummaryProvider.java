@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mokee.mkparts;
+
+import android.content.Context;
+import android.content.IntentFilter;
+import android.net.Uri;
+
+import org.mokee.mkparts.PartsUpdater.Refreshable.SummaryProvider;
+
+/**
+ * Base class of the part summary providers. Summaries are kept in the
+ * {@link PartsSummaryCache} until something they depend on changes: one of the settings
+ * returned by {@link #getTriggerUris()}, a broadcast matching {@link #getTriggerFilters()},
+ * or the locale.
+ *
+ * Implementations must compute summaries from settings and manager state only, never
+ * by loading icons, drawables or other resources of the parts screens.
+ */
+public abstract class CachedSummaryProvider implements SummaryProvider {
+
+    private static final Uri[] NO_URIS = new Uri[0];
+    private static final IntentFilter[] NO_FILTERS = new IntentFilter[0];
+
+    /**
+     * Computes the summary of a part. Called only when there is no valid cached summary.
+     */
+    protected abstract String computeSummary(Context context, String key);
+
+    /**
+     * @return the settings the summary depends on
+     */
+    protected Uri[] getTriggerUris() {
+        return NO_URIS;
+    }
+
+    /**
+     * @return broadcasts signaling a change of something else the summary depends on
+     */
+    protected IntentFilter[] getTriggerFilters() {
+        return NO_FILTERS;
+    }
+
+    @Override
+    public final String getSummary(Context context, String key) {
+        return PartsSummaryCache.get(context).getSummary(context, key, this);
+    }
+}
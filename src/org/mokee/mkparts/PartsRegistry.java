@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mokee.mkparts;
+
+import org.mokee.mkparts.PartsUpdater.Refreshable.SummaryProvider;
+import org.mokee.mkparts.contributors.ContributorsCloudFragment;
+import org.mokee.mkparts.hardware.DisplayRotation;
+import org.mokee.mkparts.livedisplay.LiveDisplaySettings;
+import org.mokee.mkparts.notificationlight.BatteryLightSettings;
+import org.mokee.mkparts.notificationlight.NotificationLightSettings;
+import org.mokee.mkparts.power.PerfProfileSettings;
+import org.mokee.mkparts.profiles.ProfilesSettings;
+import org.mokee.mkparts.search.Searchable.SearchIndexProvider;
+import org.mokee.mkparts.weather.WeatherServiceSettings;
+
+/**
+ * Static table of the providers exposed by the parts of parts_catalog.xml, looked up by
+ * part key. This replaces looking up the SUMMARY_PROVIDER and SEARCH_INDEX_DATA_PROVIDER
+ * fields of the fragment classes through reflection.
+ *
+ * Each provider is only referenced from its own case, so a lookup only loads the class
+ * holding the provider that was asked for. Parts adding a provider must be listed here.
+ */
+public final class PartsRegistry {
+
+    private PartsRegistry() {
+    }
+
+    /**
+     * @return the summary provider of the part, or null if its summary is static
+     */
+    public static SummaryProvider getSummaryProvider(String key) {
+        switch (key) {
+            case "battery_lights":
+                return BatteryLightSettings.SUMMARY_PROVIDER;
+            case "notification_lights":
+                return NotificationLightSettings.SUMMARY_PROVIDER;
+            case "perf_profile_settings":
+                return PerfProfileSettings.SUMMARY_PROVIDER;
+            case "profiles_settings":
+                return ProfilesSettings.SUMMARY_PROVIDER;
+            case "rotation":
+                return DisplayRotation.SUMMARY_PROVIDER;
+            case "weather_settings":
+                return WeatherServiceSettings.SUMMARY_PROVIDER;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the search index provider of the part, or null if it only has an XML resource
+     */
+    public static SearchIndexProvider getSearchIndexProvider(String key) {
+        switch (key) {
+            case "contributors":
+                return ContributorsCloudFragment.SEARCH_INDEX_DATA_PROVIDER;
+            case "livedisplay":
+                return LiveDisplaySettings.SEARCH_INDEX_DATA_PROVIDER;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mokee.mkparts;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.internal.os.BackgroundThread;
+
+/**
+ * Process wide cache of the part summaries served to remote clients.
+ *
+ * Every entry is tied to the settings its provider declared. All of them are watched
+ * by a single content observer, which drops the entries depending on the setting that
+ * changed. Repeated requests for a part are answered from memory until then, instead
+ * of querying its managers again.
+ */
+public class PartsSummaryCache {
+
+    private static final String TAG = PartsSummaryCache.class.getSimpleName();
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.VERBOSE);
+
+    private static PartsSummaryCache sInstance;
+
+    private final Context mContext;
+
+    private final ArrayMap<String, String> mSummaries = new ArrayMap<>();
+    // Part keys depending on each watched setting
+    private final ArrayMap<Uri, ArraySet<String>> mKeysByUri = new ArrayMap<>();
+    // Providers whose broadcast triggers are registered, with the keys they serve
+    private final ArrayMap<CachedSummaryProvider, ArraySet<String>> mKeysByProvider =
+            new ArrayMap<>();
+    private int mGeneration;
+
+    private final ContentObserver mObserver;
+
+    private PartsSummaryCache(Context context) {
+        mContext = context;
+
+        final Handler handler = BackgroundThread.getHandler();
+        mObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                invalidate(uri);
+            }
+        };
+        mContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidateAll();
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED), null, handler);
+    }
+
+    public static synchronized PartsSummaryCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new PartsSummaryCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the summary of a part, computing it with its provider if it isn't cached.
+     */
+    String getSummary(Context context, String key, CachedSummaryProvider provider) {
+        final int generation;
+        synchronized (mSummaries) {
+            if (mSummaries.containsKey(key)) {
+                return mSummaries.get(key);
+            }
+            generation = mGeneration;
+        }
+
+        final String summary = provider.computeSummary(context, key);
+        synchronized (mSummaries) {
+            watchLocked(key, provider);
+            // Don't keep a summary that was computed across an invalidation
+            if (generation == mGeneration) {
+                mSummaries.put(key, summary);
+            }
+        }
+        if (DEBUG) Log.d(TAG, "computed summary key=" + key + " summary=" + summary);
+        return summary;
+    }
+
+    /**
+     * Drops the cached summary of a part.
+     */
+    public void invalidate(String key) {
+        synchronized (mSummaries) {
+            mSummaries.remove(key);
+            mGeneration++;
+        }
+    }
+
+    private void invalidate(Uri uri) {
+        synchronized (mSummaries) {
+            final ArraySet<String> keys = mKeysByUri.get(uri);
+            if (keys != null) {
+                mSummaries.removeAll(keys);
+            }
+            mGeneration++;
+        }
+    }
+
+    private void invalidate(CachedSummaryProvider provider) {
+        synchronized (mSummaries) {
+            mSummaries.removeAll(mKeysByProvider.get(provider));
+            mGeneration++;
+        }
+    }
+
+    private void invalidateAll() {
+        synchronized (mSummaries) {
+            mSummaries.clear();
+            mGeneration++;
+        }
+    }
+
+    private void watchLocked(String key, final CachedSummaryProvider provider) {
+        for (Uri uri : provider.getTriggerUris()) {
+            ArraySet<String> keys = mKeysByUri.get(uri);
+            if (keys == null) {
+                keys = new ArraySet<>();
+                mKeysByUri.put(uri, keys);
+                mContext.getContentResolver().registerContentObserver(uri, false, mObserver);
+            }
+            keys.add(key);
+        }
+
+        ArraySet<String> keys = mKeysByProvider.get(provider);
+        if (keys == null) {
+            keys = new ArraySet<>();
+            mKeysByProvider.put(provider, keys);
+            final BroadcastReceiver receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    invalidate(provider);
+                }
+            };
+            for (IntentFilter filter : provider.getTriggerFilters()) {
+                mContext.registerReceiver(receiver, filter, null,
+                        BackgroundThread.getHandler());
+            }
+        }
+        keys.add(key);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mokee.mkparts;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import static mokee.preference.RemotePreference.EXTRA_SUMMARY;
+
+/**
+ * Batched counterpart of the PartsUpdater broadcast. Remote clients showing several
+ * parts, like the top level of Settings, get the state of all of them in one round trip.
+ *
+ * call(METHOD_GET_PARTS, null, extras) expects the part keys in EXTRA_KEYS and returns
+ * a bundle holding, for every existing part, the same extras as the broadcast result,
+ * keyed by part key. Querying with the part keys as selection arguments returns a
+ * cursor of (key, summary) rows instead.
+ */
+public class PartsSummaryProvider extends ContentProvider {
+
+    public static final String METHOD_GET_PARTS = "get_parts";
+    public static final String EXTRA_KEYS = "keys";
+
+    public static final String COLUMN_KEY = "key";
+    public static final String COLUMN_SUMMARY = "summary";
+
+    private static final String[] COLUMNS = new String[] { COLUMN_KEY, COLUMN_SUMMARY };
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!METHOD_GET_PARTS.equals(method) || extras == null) {
+            return null;
+        }
+        final String[] keys = extras.getStringArray(EXTRA_KEYS);
+        if (keys == null) {
+            return null;
+        }
+
+        final Bundle result = new Bundle();
+        for (String key : keys) {
+            final Bundle part = new Bundle();
+            if (PartsUpdater.fillPartExtras(getContext(), key, part)) {
+                result.putBundle(key, part);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        if (selectionArgs == null) {
+            return cursor;
+        }
+        for (String key : selectionArgs) {
+            final Bundle part = new Bundle();
+            if (PartsUpdater.fillPartExtras(getContext(), key, part)) {
+                cursor.addRow(new Object[] { key, part.getString(EXTRA_SUMMARY) });
+            }
+        }
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
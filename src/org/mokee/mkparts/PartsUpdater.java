@@ -22,8 +22,6 @@ import android.util.Log;
 import org.mokee.internal.mkparts.PartInfo;
 import org.mokee.internal.mkparts.PartsList;
 
-import java.lang.reflect.Field;
-
 import mokee.preference.RemotePreferenceUpdater;
 import mokee.preference.SettingsHelper;
 
@@ -38,9 +36,14 @@ import static org.mokee.internal.mkparts.PartsList.EXTRA_PART;
  *
  * This works in conjunction with MKPartsPreference, which will send an
  * ordered broadcast requesting updated information. The part will be
- * looked up, and checked for a static SUMMARY_INFO field. If an
- * instance of SummaryInfo is found in this field, the result of the
- * broadcast will be updated with the new information.
+ * looked up in the PartsRegistry. If the part has a SummaryProvider,
+ * the result of the broadcast will be updated with the new information.
+ *
+ * Clients showing many parts at once can fetch all their summaries in a
+ * single call through PartsSummaryProvider instead.
+ *
+ * Summaries are kept in the PartsSummaryCache until the settings they
+ * depend on change, so repeated requests for a part don't recompute them.
  *
  * Parts can also call refreshPart to send an asynchronous update to any
  * active remote components via broadcast.
@@ -49,34 +52,19 @@ public class PartsUpdater extends RemotePreferenceUpdater {
 
     private static final String TAG = PartsUpdater.class.getSimpleName();
 
-    public static final String FIELD_NAME_SUMMARY_PROVIDER = "SUMMARY_PROVIDER";
-
     private static final boolean DEBUG = Log.isLoggable(TAG, Log.VERBOSE);
 
-    private Refreshable.SummaryProvider getPartSummary(PartInfo pi) {
-        final Class<?> clazz;
-        try {
-            clazz = Class.forName(pi.getFragmentClass());
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Cannot find class: " + pi.getFragmentClass());
-            return null;
-        }
-
-        if (clazz == null || !Refreshable.class.isAssignableFrom(clazz)) {
-            return null;
-        }
-
-        try {
-            final Field f = clazz.getField(FIELD_NAME_SUMMARY_PROVIDER);
-            return (Refreshable.SummaryProvider) f.get(null);
-        } catch (Exception e) {
-            // ignore
-        }
-        return null;
-    }
-
     @Override
     protected boolean fillResultExtras(Context context, String key, Bundle bundle) {
+        return fillPartExtras(context, key, bundle);
+    }
+
+    /**
+     * Fills the extras describing a part, as sent back to remote preferences.
+     *
+     * @return false if the part doesn't exist
+     */
+    static boolean fillPartExtras(Context context, String key, Bundle bundle) {
         final PartInfo pi = PartsList.get(context).getPartInfo(key);
         if (pi == null) {
             Log.w(TAG, "Part not found: " + key);
@@ -85,7 +73,7 @@ public class PartsUpdater extends RemotePreferenceUpdater {
 
         bundle.putString(EXTRA_KEY, key);
 
-        final Refreshable.SummaryProvider si = getPartSummary(pi);
+        final Refreshable.SummaryProvider si = PartsRegistry.getSummaryProvider(key);
         if (si != null) {
             pi.setSummary(si.getSummary(context, key));
             bundle.putString(EXTRA_SUMMARY, pi.getSummary());
@@ -98,6 +86,14 @@ public class PartsUpdater extends RemotePreferenceUpdater {
         return true;
     }
 
+    /**
+     * Notifies remote preferences that a part changed, dropping its cached summary.
+     */
+    public static void notifyChanged(Context context, String key) {
+        PartsSummaryCache.get(context).invalidate(key);
+        RemotePreferenceUpdater.notifyChanged(context, key);
+    }
+
     public interface Refreshable extends SettingsHelper.OnSettingsChangeListener {
         public interface SummaryProvider {
             public String getSummary(Context context, String key);
@@ -49,6 +49,7 @@ import com.android.settingslib.applications.ApplicationsState;
 import org.mokee.mkparts.PartsActivity;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
+import org.mokee.mkparts.widget.AppIconLoader;
 import org.mokee.mkparts.widget.SwitchBar;
 
 import java.util.ArrayList;
@@ -149,6 +150,7 @@ public class ExpandedDesktopSettings extends SettingsPreferenceFragment
         save();
         mSession.onPause();
         mSession.onDestroy();
+        mAllPackagesAdapter.release();
     }
 
     @Override
@@ -340,6 +342,7 @@ public class ExpandedDesktopSettings extends SettingsPreferenceFragment
 
         private final LayoutInflater mInflater;
         private final ModeAdapter mModesAdapter;
+        private final AppIconLoader mIconLoader;
         private List<ApplicationsState.AppEntry> mEntries = new ArrayList<>();
         private String[] mSections;
         private int[] mPositions;
@@ -347,9 +350,18 @@ public class ExpandedDesktopSettings extends SettingsPreferenceFragment
         public AllPackagesAdapter(Context context) {
             mInflater = LayoutInflater.from(context);
             mModesAdapter = new ModeAdapter(context);
+            mIconLoader = new AppIconLoader(context,
+                    context.getDrawable(android.R.mipmap.sym_def_app_icon));
             mActivityFilter = new ActivityFilter(context.getPackageManager());
         }
 
+        /**
+         * Stops loading icons, once the fragment is destroyed.
+         */
+        public void release() {
+            mIconLoader.release();
+        }
+
         @Override
         public int getCount() {
             return mEntries.size();
@@ -389,8 +401,12 @@ public class ExpandedDesktopSettings extends SettingsPreferenceFragment
             }
 
             holder.title.setText(entry.label);
-            mApplicationsState.ensureIcon(entry);
-            holder.icon.setImageDrawable(entry.icon);
+            if (entry.icon != null) {
+                AppIconLoader.cancel(holder.icon);
+                holder.icon.setImageDrawable(entry.icon);
+            } else {
+                mIconLoader.loadIcon(holder.icon, entry.info);
+            }
             holder.mode.setSelection(getStateForPackage(entry.info.packageName), false);
             holder.mode.setTag(entry);
             holder.stateIcon.setImageResource(getStateDrawable(
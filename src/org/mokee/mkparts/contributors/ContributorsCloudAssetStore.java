@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Read-only access to the tables of the contributors database, read in place from the
+ * uncompressed asset through a memory mapping. This avoids the need of a copy of the
+ * database on /data to draw the cloud.
+ * <p>
+ * Only what the shipped database uses is supported: UTF-8 text and full scans of
+ * rowid tables. Scans don't share any state, so the store can be used from any thread.
+ */
+class ContributorsCloudAssetStore {
+
+    private static final String TAG = "ContributorsCloud";
+
+    private static final byte[] HEADER_MAGIC = "SQLite format 3\0".getBytes(
+            StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 100;
+    private static final int ENCODING_UTF8 = 1;
+
+    private static final int PAGE_TABLE_INTERIOR = 0x05;
+    private static final int PAGE_TABLE_LEAF = 0x0d;
+
+    private static final int MASTER_TYPE = 0;
+    private static final int MASTER_NAME = 1;
+    private static final int MASTER_ROOT_PAGE = 3;
+
+    interface RowCallback {
+        /**
+         * @return false to stop the scan
+         */
+        boolean onRow(Row row);
+    }
+
+    private final ByteBuffer mBuffer;
+    private final int mPageSize;
+    private final int mUsableSize;
+
+    private ContributorsCloudAssetStore(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        if (mBuffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Truncated database");
+        }
+        for (int i = 0; i < HEADER_MAGIC.length; i++) {
+            if (mBuffer.get(i) != HEADER_MAGIC[i]) {
+                throw new IOException("Not a database");
+            }
+        }
+        final int pageSize = mBuffer.getShort(16) & 0xffff;
+        mPageSize = pageSize == 1 ? 65536 : pageSize;
+        mUsableSize = mPageSize - (mBuffer.get(20) & 0xff);
+        if (mBuffer.getInt(56) != ENCODING_UTF8) {
+            throw new IOException("Unsupported text encoding");
+        }
+    }
+
+    /**
+     * Maps an asset of the package.
+     *
+     * @return the store, or null if the asset is compressed or isn't a supported database
+     */
+    static ContributorsCloudAssetStore open(Context context, String asset) {
+        AssetFileDescriptor afd = null;
+        FileInputStream fis = null;
+        try {
+            // Only uncompressed assets have a file descriptor
+            afd = context.getAssets().openFd(asset);
+            fis = afd.createInputStream();
+            ByteBuffer buffer = fis.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength());
+            return new ContributorsCloudAssetStore(buffer);
+        } catch (IOException ex) {
+            Log.w(TAG, "Cannot map " + asset + " in place: " + ex.getMessage());
+            return null;
+        } finally {
+            // The mapping remains valid after closing the descriptor
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ex) {
+                    // Ignore
+                }
+            }
+            if (afd != null) {
+                try {
+                    afd.close();
+                } catch (IOException ex) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every row of a table in rowid order.
+     *
+     * @return false if the table doesn't exist or the database is malformed
+     */
+    boolean scanTable(String table, RowCallback callback) {
+        try {
+            final int rootPage = findRootPage(table);
+            if (rootPage <= 0) {
+                return false;
+            }
+            scan(rootPage, callback);
+            return true;
+        } catch (IndexOutOfBoundsException | IOException ex) {
+            Log.e(TAG, "Cannot read table " + table, ex);
+            return false;
+        }
+    }
+
+    private int findRootPage(final String table) throws IOException {
+        final int[] rootPage = new int[]{0};
+        scan(1, new RowCallback() {
+            @Override
+            public boolean onRow(Row row) {
+                if ("table".equals(row.getString(MASTER_TYPE))
+                        && table.equalsIgnoreCase(row.getString(MASTER_NAME))) {
+                    rootPage[0] = (int) row.getLong(MASTER_ROOT_PAGE);
+                    return false;
+                }
+                return true;
+            }
+        });
+        return rootPage[0];
+    }
+
+    private void scan(int rootPage, RowCallback callback) throws IOException {
+        final Row row = new Row(mBuffer.duplicate());
+        final Deque<Integer> pages = new ArrayDeque<>();
+        pages.push(rootPage);
+        while (!pages.isEmpty()) {
+            final int page = pages.pop();
+            final int pageOffset = getPageOffset(page);
+            final int header = page == 1 ? pageOffset + HEADER_SIZE : pageOffset;
+            final int type = mBuffer.get(header) & 0xff;
+            final int cells = mBuffer.getShort(header + 3) & 0xffff;
+
+            if (type == PAGE_TABLE_INTERIOR) {
+                // Push the children in reverse order, so they are visited in rowid order
+                pages.push(mBuffer.getInt(header + 8));
+                for (int i = cells - 1; i >= 0; i--) {
+                    final int cell = pageOffset + (mBuffer.getShort(header + 12 + i * 2) & 0xffff);
+                    pages.push(mBuffer.getInt(cell));
+                }
+            } else if (type == PAGE_TABLE_LEAF) {
+                for (int i = 0; i < cells; i++) {
+                    final int cell = pageOffset + (mBuffer.getShort(header + 8 + i * 2) & 0xffff);
+                    readCell(cell, row);
+                    if (!callback.onRow(row)) {
+                        return;
+                    }
+                }
+            } else {
+                throw new IOException("Unexpected page type " + type + " in page " + page);
+            }
+        }
+    }
+
+    private void readCell(int cell, Row row) throws IOException {
+        final long[] varint = row.mVarint;
+        int offset = cell + readVarint(mBuffer, cell, varint);
+        final int payloadSize = (int) varint[0];
+        // Skip the rowid
+        offset += readVarint(mBuffer, offset, varint);
+
+        final int maxLocal = mUsableSize - 35;
+        if (payloadSize <= maxLocal) {
+            // Read the record in place
+            row.reset(mBuffer, offset);
+            return;
+        }
+
+        // Assemble the payload spilled to overflow pages
+        final int minLocal = ((mUsableSize - 12) * 32 / 255) - 23;
+        int local = minLocal + ((payloadSize - minLocal) % (mUsableSize - 4));
+        if (local > maxLocal) {
+            local = minLocal;
+        }
+        byte[] payload = new byte[payloadSize];
+        ByteBuffer src = mBuffer.duplicate();
+        src.position(offset);
+        src.get(payload, 0, local);
+        int read = local;
+        int overflow = mBuffer.getInt(offset + local);
+        while (read < payloadSize) {
+            if (overflow == 0) {
+                throw new IOException("Truncated overflow chain");
+            }
+            final int pageOffset = getPageOffset(overflow);
+            final int length = Math.min(payloadSize - read, mUsableSize - 4);
+            src.position(pageOffset + 4);
+            src.get(payload, read, length);
+            read += length;
+            overflow = mBuffer.getInt(pageOffset);
+        }
+        row.reset(ByteBuffer.wrap(payload), 0);
+    }
+
+    private int getPageOffset(int page) throws IOException {
+        final long offset = (long) (page - 1) * mPageSize;
+        if (page < 1 || offset + mPageSize > mBuffer.capacity()) {
+            throw new IOException("Invalid page " + page);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Reads a SQLite variable length integer.
+     *
+     * @return the number of bytes used by the integer
+     */
+    private static int readVarint(ByteBuffer buffer, int offset, long[] out) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            final int b = buffer.get(offset + i) & 0xff;
+            value = (value << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) {
+                out[0] = value;
+                return i + 1;
+            }
+        }
+        out[0] = (value << 8) | (buffer.get(offset + 8) & 0xff);
+        return 9;
+    }
+
+    /**
+     * A record of a table. Values are decoded on access and the instance is reused
+     * for the following rows, so it must not be kept after the callback returns.
+     */
+    static final class Row {
+        private final long[] mVarint = new long[1];
+        private ByteBuffer mData;
+        private int mColumnCount;
+        private int[] mTypes = new int[16];
+        private int[] mOffsets = new int[16];
+
+        private Row(ByteBuffer data) {
+            mData = data;
+        }
+
+        private void reset(ByteBuffer data, int offset) {
+            mData = data;
+            int pos = offset + readVarint(data, offset, mVarint);
+            final int end = offset + (int) mVarint[0];
+            int valueOffset = end;
+            mColumnCount = 0;
+            while (pos < end) {
+                pos += readVarint(data, pos, mVarint);
+                if (mColumnCount == mTypes.length) {
+                    mTypes = Arrays.copyOf(mTypes, mColumnCount * 2);
+                    mOffsets = Arrays.copyOf(mOffsets, mColumnCount * 2);
+                }
+                final int type = (int) mVarint[0];
+                mTypes[mColumnCount] = type;
+                mOffsets[mColumnCount] = valueOffset;
+                valueOffset += getValueSize(type);
+                mColumnCount++;
+            }
+        }
+
+        int getColumnCount() {
+            return mColumnCount;
+        }
+
+        boolean isNull(int column) {
+            // Columns added after the row was written are null too
+            return column >= mColumnCount || mTypes[column] == 0;
+        }
+
+        long getLong(int column) {
+            if (isNull(column)) {
+                return 0;
+            }
+            final int type = mTypes[column];
+            if (type == 7) {
+                return (long) mData.getDouble(mOffsets[column]);
+            }
+            if (type >= 12) {
+                try {
+                    return Long.parseLong(getString(column).trim());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+            return readInteger(type, mOffsets[column]);
+        }
+
+        double getDouble(int column) {
+            if (isNull(column)) {
+                return 0;
+            }
+            final int type = mTypes[column];
+            if (type == 7) {
+                return mData.getDouble(mOffsets[column]);
+            }
+            if (type >= 12) {
+                try {
+                    return Double.parseDouble(getString(column).trim());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+            return readInteger(type, mOffsets[column]);
+        }
+
+        String getString(int column) {
+            if (isNull(column)) {
+                return null;
+            }
+            final int type = mTypes[column];
+            if (type < 12) {
+                return type == 7 ? String.valueOf(getDouble(column))
+                        : String.valueOf(getLong(column));
+            }
+            byte[] value = new byte[getValueSize(type)];
+            ByteBuffer src = mData.duplicate();
+            src.position(mOffsets[column]);
+            src.get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        private long readInteger(int type, int offset) {
+            switch (type) {
+                case 8:
+                    return 0;
+                case 9:
+                    return 1;
+                default:
+                    final int size = getValueSize(type);
+                    // Sign extend the most significant byte
+                    long value = mData.get(offset);
+                    for (int i = 1; i < size; i++) {
+                        value = (value << 8) | (mData.get(offset + i) & 0xff);
+                    }
+                    return value;
+            }
+        }
+
+        private static int getValueSize(int type) {
+            switch (type) {
+                case 0:
+                case 8:
+                case 9:
+                    return 0;
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                    return type;
+                case 5:
+                    return 6;
+                case 6:
+                case 7:
+                    return 8;
+                default:
+                    return type >= 12 ? (type - 12) / 2 : 0;
+            }
+        }
+    }
+}
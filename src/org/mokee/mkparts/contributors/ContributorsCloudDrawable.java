@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.PixelFormat;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Base of the drawables showing the contributors cloud. The cloud is laid out in a square
+ * coordinate space of {@link #CLOUD_SIZE} units per side, which is also the intrinsic size of
+ * the drawable, and the hosting view's matrix maps it to the screen.
+ * <p>
+ * Subclasses decide how the names are rasterized; this class keeps track of the selected
+ * contributor and of the area of the cloud that is currently visible.
+ */
+abstract class ContributorsCloudDrawable extends Drawable {
+
+    static final int CLOUD_SIZE = 1024;
+
+    final ContributorsCloudIndex mIndex;
+    final int mForegroundColor;
+    final int mSelectedColor;
+
+    private final RectF mViewport = new RectF(0, 0, CLOUD_SIZE, CLOUD_SIZE);
+    private float mScale = 1f;
+
+    private volatile ContributorsCloudEntry mSelectedEntry;
+
+    /**
+     * @param index the spatial index over the names of the cloud
+     * @param foregroundColor the color of unselected names
+     * @param selectedColor the color of the selected name
+     */
+    ContributorsCloudDrawable(ContributorsCloudIndex index, int foregroundColor,
+            int selectedColor) {
+        mIndex = index;
+        mForegroundColor = foregroundColor;
+        mSelectedColor = selectedColor;
+    }
+
+    ContributorsCloudEntry getSelectedEntry() {
+        return mSelectedEntry;
+    }
+
+    /**
+     * Changes the highlighted contributor.
+     */
+    void setSelectedEntry(ContributorsCloudEntry entry) {
+        final ContributorsCloudEntry previous = mSelectedEntry;
+        if (previous == entry) {
+            return;
+        }
+        mSelectedEntry = entry;
+        onSelectedEntryChanged(previous, entry);
+        invalidateSelf();
+    }
+
+    /**
+     * Called after the selected entry changed, before the drawable is invalidated.
+     */
+    protected void onSelectedEntryChanged(ContributorsCloudEntry previous,
+            ContributorsCloudEntry entry) {
+    }
+
+    /**
+     * Updates the visible area of the cloud.
+     *
+     * @param displayRect the bounds of the cloud in view coordinates
+     * @param viewWidth the width of the view showing the cloud
+     * @param viewHeight the height of the view showing the cloud
+     */
+    void onDisplayRectChanged(RectF displayRect, int viewWidth, int viewHeight) {
+        if (displayRect.width() <= 0 || displayRect.height() <= 0) {
+            return;
+        }
+        final float scale = displayRect.width() / CLOUD_SIZE;
+        synchronized (mViewport) {
+            mViewport.set(-displayRect.left / scale, -displayRect.top / scale,
+                    (viewWidth - displayRect.left) / scale, (viewHeight - displayRect.top) / scale);
+            mScale = scale;
+        }
+    }
+
+    /**
+     * Copies the visible area of the cloud, in cloud coordinates.
+     *
+     * @return the number of screen pixels per cloud unit
+     */
+    float getViewport(RectF outViewport) {
+        synchronized (mViewport) {
+            outViewport.set(mViewport);
+            return mScale;
+        }
+    }
+
+    /**
+     * Frees the resources held by the drawable. It must not be drawn afterwards.
+     */
+    void release() {
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return CLOUD_SIZE;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return CLOUD_SIZE;
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.RectF;
+
+/**
+ * A single name of the contributors cloud, already translated to the cloud coordinate space.
+ */
+final class ContributorsCloudEntry {
+    final int mId;
+    final String mName;
+    final float mX;
+    final float mY;
+    final int mRotation;
+    final float mFontSize;
+
+    // Bounds of the drawn (and rotated) text, filled in by ContributorsCloudIndex
+    final RectF mBounds = new RectF();
+
+    // Shortcut to the cached measures of the name, filled in on first use
+    volatile ContributorsCloudTextLayout mLayout;
+
+    ContributorsCloudEntry(int id, String name, float x, float y, int rotation, float fontSize) {
+        mId = id;
+        mName = name;
+        mX = x;
+        mY = y;
+        mRotation = rotation;
+        mFontSize = fontSize;
+    }
+}
@@ -26,18 +26,19 @@ import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.Fragment;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.support.v7.preference.PreferenceManager;
 import android.text.Html;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
@@ -61,9 +62,12 @@ import android.widget.TextView;
 
 import org.mokee.mkparts.PartsActivity;
 import org.mokee.mkparts.R;
+import org.mokee.mkparts.contributors.ContributorsCloudAssetStore.Row;
+import org.mokee.mkparts.contributors.ContributorsCloudAssetStore.RowCallback;
 import org.mokee.mkparts.search.BaseSearchIndexProvider;
 import org.mokee.mkparts.search.SearchIndexableRaw;
 import org.mokee.mkparts.search.Searchable;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -72,8 +76,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
 
 public class ContributorsCloudFragment extends Fragment implements SearchView.OnQueryTextListener,
         SearchView.OnCloseListener, MenuItem.OnActionExpandListener, Searchable {
@@ -81,21 +88,62 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     private static final String TAG = "ContributorsCloud";
 
     private static final String DB_NAME = "contributors.db";
+    private static final String SEARCH_INDEX_TABLE = "metadata_fts";
+    private static final String SUMMARY_TABLE = "summary";
+
+    // Keys of the summary table
+    private static final String SUMMARY_TOTAL_CONTRIBUTORS = "total_contributors";
+    private static final String SUMMARY_TOTAL_COMMITS = "total_commits";
+    private static final String SUMMARY_LAST_UPDATE = "last_update";
+
+    // Column positions of the tables read through ContributorsCloudAssetStore
+    private static final int INFO_KEY = 0;
+    private static final int INFO_VALUE = 1;
+    private static final int METADATA_ID = 0;
+    private static final int METADATA_NAME = 1;
+    private static final int METADATA_USERNAME = 2;
+    private static final int METADATA_COMMITS = 4;
+    private static final int METADATA_X = 5;
+    private static final int METADATA_Y = 6;
+    private static final int METADATA_R = 9;
+    private static final int METADATA_FS = 10;
+
+    // Bump when changing the tables created on top of the extracted database
+    private static final int DB_SCHEMA_VERSION = 2;
+    private static final String PREF_DB_STAMP = "contributors_db_stamp";
+    private static final String PREF_DB_LENGTH = "contributors_db_length";
+    private static final String PREF_SUMMARY_STAMP = "contributors_summary_stamp";
+    private static final String PREF_SUMMARY_TOTAL_CONTRIBUTORS =
+            "contributors_summary_total_contributors";
+    private static final String PREF_SUMMARY_TOTAL_COMMITS = "contributors_summary_total_commits";
+    private static final String PREF_SUMMARY_LAST_UPDATE = "contributors_summary_last_update";
+
+    private static final int SEARCH_DELAY = 150;
+    private static final int SEARCH_MAX_RESULTS = 50;
 
     private static final String STATE_SELECTED_CONTRIBUTOR = "state_selected_contributor";
 
     private ContributorsCloudViewController mViewController;
+    // Set on the main thread, reused by the loader tasks
+    private volatile ContributorsCloudDrawable mCloudDrawable;
     private ImageView mImageView;
     private View mLoadingView;
     private View mFailedView;
     private ListView mSearchResults;
     private ContributorsAdapter mSearchAdapter;
 
+    // Guards the database apart from the cloud, which may take long to load
+    private final Object mDatabaseLock = new Object();
     private SQLiteDatabase mDatabase;
+    private ContributorsCloudAssetStore mAssetStore;
+    private boolean mAssetStoreOpened;
+    private boolean mHasSearchIndex;
+    private boolean mHasSummary;
+    private ContributorsCloudIndex mCloudIndex;
 
-    private int mTotalContributors;
-    private int mTotalCommits;
-    private long mLastUpdate;
+    private int mTotalContributors = -1;
+    private int mTotalCommits = -1;
+    private long mLastUpdate = -1;
 
     private int mSelectedContributor = -1;
     private String mContributorName;
@@ -108,11 +156,17 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     private SearchView mSearchView;
 
     private Handler mHandler;
+    // Loads run one at a time, and so do searches, but a search never waits for a load
+    private final Executor mExecutor = BackgroundExecutor.newSerialExecutor();
+    private final Executor mSearchExecutor = BackgroundExecutor.newSerialExecutor();
+    private ContributorsSearchTask mSearchTask;
+    private String mSearchQuery;
 
     private static final String KEY_PREFIX = "contributor_";
 
     private static class ViewInfo {
-        Bitmap mBitmap;
+        ContributorsCloudDrawable mDrawable;
+        ContributorsCloudEntry mSelectedEntry;
         float mFocusX;
         float mFocusY;
     }
@@ -122,6 +176,12 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         String mLabel;
     }
 
+    private static class ContributorCommits {
+        int mId;
+        String mUsername;
+        long mCommits;
+    }
+
     private static class ContributorsViewHolder {
         TextView mLabel;
     }
@@ -176,8 +236,10 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
             try {
                 loadContributorsInfo(getActivity());
                 loadUserInfo(getActivity());
+                // The info doesn't depend on the cloud, let the user reach it meanwhile
+                publishProgress();
                 mViewInfo = generateViewInfo(getActivity(), mSelectedContributor);
-                if (mViewInfo != null && mViewInfo.mBitmap != null) {
+                if (mViewInfo != null && mViewInfo.mDrawable != null) {
                     return Boolean.TRUE;
                 }
 
@@ -187,11 +249,30 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
             return Boolean.FALSE;
         }
 
+        @Override
+        protected void onProgressUpdate(Void... values) {
+            if (mNotify && mLastUpdate != -1) {
+                showMenuItems(true);
+            }
+        }
+
         @Override
         protected void onPostExecute(Boolean result) {
             if (result == true) {
-                mImageView.setImageBitmap(mViewInfo.mBitmap);
-                mViewController.update();
+                // Tasks queued before the first one finished each created a drawable
+                final ContributorsCloudDrawable previous = mCloudDrawable;
+                mCloudDrawable = mViewInfo.mDrawable;
+                mCloudDrawable.setSelectedEntry(mViewInfo.mSelectedEntry);
+                if (mImageView.getDrawable() != mCloudDrawable) {
+                    mImageView.setImageDrawable(mCloudDrawable);
+                    mViewController.update();
+                    if (previous != null && previous != mCloudDrawable) {
+                        previous.release();
+                    }
+                } else if (mNavigate) {
+                    // The focus is computed for the unzoomed cloud
+                    mViewController.update();
+                }
                 if (mNotify) {
                     if (mNavigate) {
                         onLoadCloudDataSuccess(mViewInfo.mFocusX, mViewInfo.mFocusY);
@@ -200,10 +281,11 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                     }
                 }
             } else {
-                mImageView.setImageBitmap(null);
+                mImageView.setImageDrawable(null);
                 mViewController.update();
-                if (mViewInfo != null && mViewInfo.mBitmap != null) {
-                    mViewInfo.mBitmap.recycle();
+                if (mCloudDrawable != null) {
+                    mCloudDrawable.release();
+                    mCloudDrawable = null;
                 }
                 if (mNotify) {
                     onLoadCloudDataFailed();
@@ -217,6 +299,44 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         }
     }
 
+    private class ContributorsSearchTask
+            extends AsyncTask<Void, Void, List<ContributorsDataHolder>> {
+        private final Context mContext;
+        private final String mQuery;
+
+        public ContributorsSearchTask(Context context, String query) {
+            mContext = context;
+            mQuery = query;
+        }
+
+        @Override
+        protected List<ContributorsDataHolder> doInBackground(Void... params) {
+            return performFilter(mContext, mQuery);
+        }
+
+        @Override
+        protected void onPostExecute(List<ContributorsDataHolder> contributors) {
+            if (isCancelled() || !TextUtils.equals(mQuery, mSearchQuery)) {
+                // The query changed while searching
+                return;
+            }
+            mSearchAdapter.clear();
+            mSearchAdapter.addAll(contributors);
+            mSearchAdapter.notifyDataSetChanged();
+        }
+    }
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mSearchTask != null) {
+                mSearchTask.cancel(false);
+            }
+            mSearchTask = new ContributorsSearchTask(getActivity(), mSearchQuery);
+            mSearchTask.executeOnExecutor(mSearchExecutor);
+        }
+    };
+
     public ContributorsCloudFragment() {
     }
 
@@ -233,6 +353,17 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mSearchRunnable);
+        }
+        if (mSearchTask != null) {
+            mSearchTask.cancel(false);
+            mSearchTask = null;
+        }
+        if (mCloudDrawable != null) {
+            mCloudDrawable.release();
+            mCloudDrawable = null;
+        }
         if (mDatabase != null && mDatabase.isOpen()) {
             try {
                 mDatabase.close();
@@ -289,7 +420,7 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
                 // Load the data from the database and fill the image
                 ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(false, false);
-                task.execute();
+                task.executeOnExecutor(mExecutor);
                 break;
 
             case R.id.contributor_info:
@@ -316,6 +447,23 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         mViewController = new ContributorsCloudViewController(mImageView);
         mViewController.setMaximumScale(20f);
         mViewController.setMediumScale(7f);
+        mViewController.setOnMatrixChangeListener(
+                new ContributorsCloudViewController.OnMatrixChangedListener() {
+            @Override
+            public void onMatrixChanged(RectF rect) {
+                if (mCloudDrawable != null) {
+                    mCloudDrawable.onDisplayRectChanged(rect,
+                            mImageView.getWidth(), mImageView.getHeight());
+                }
+            }
+        });
+        mViewController.setOnPhotoTapListener(
+                new ContributorsCloudViewController.OnPhotoTapListener() {
+            @Override
+            public void onPhotoTap(View view, float x, float y) {
+                onCloudTapped(x, y);
+            }
+        });
 
         mSearchResults = (ListView) v.findViewById(R.id.contributors_cloud_search_results);
         mSearchAdapter = new ContributorsAdapter(getActivity());
@@ -331,7 +479,7 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
         // Load the data from the database and fill the image
         ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(true, false);
-        task.execute();
+        task.executeOnExecutor(mExecutor);
 
         return v;
     }
@@ -385,13 +533,20 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
     @Override
     public boolean onQueryTextChange(String newText) {
-        List<ContributorsDataHolder> contributors = new ArrayList<>();
-        if (!TextUtils.isEmpty(newText) || newText.length() >= 3) {
-            contributors.addAll(performFilter(getActivity(), newText));
+        mSearchQuery = newText;
+        mHandler.removeCallbacks(mSearchRunnable);
+        if (TextUtils.isEmpty(newText)) {
+            if (mSearchTask != null) {
+                mSearchTask.cancel(false);
+                mSearchTask = null;
+            }
+            mSearchAdapter.clear();
+            mSearchAdapter.notifyDataSetChanged();
+            return true;
         }
-        mSearchAdapter.clear();
-        mSearchAdapter.addAll(contributors);
-        mSearchAdapter.notifyDataSetChanged();
+
+        // Wait for the user to stop typing before querying the database
+        mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY);
         return true;
     }
 
@@ -477,22 +632,147 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
     }
 
     private synchronized ViewInfo generateViewInfo(Context context, int selectedId) {
-        Bitmap bitmap = null;
-        float focusX = -1, focusY = -1;
         final Resources res = context.getResources();
 
+        // Load the names of the cloud once, the drawable renders them lazily
+        ContributorsCloudIndex index = loadCloudIndex(context);
+        if (index == null) {
+            // We don't have valid cloud data
+            return null;
+        }
+
+        ContributorsCloudDrawable drawable = mCloudDrawable;
+        ContributorsCloudEntry selected = null;
+        for (ContributorsCloudEntry entry : index.getEntries()) {
+            if (entry.mId == selectedId) {
+                selected = entry;
+                break;
+            }
+        }
+
+        if (drawable == null) {
+            TypedValue colorAccent = new TypedValue();
+            context.getTheme().resolveAttribute(com.android.internal.R.attr.colorAccent,
+                    colorAccent, true);
+            int colorForeground = res.getColor(colorAccent.resourceId);
+            int colorSelected = res.getColor(R.color.contributors_cloud_selected_color);
+
+            if (isVectorCloudSupported()) {
+                // Let the GPU draw the names at the current zoom
+                drawable = new ContributorsCloudVectorDrawable(index, colorForeground,
+                        colorSelected);
+                drawable.setSelectedEntry(selected);
+            } else {
+                // Tiles are rendered on demand, so only bound the memory they can take
+                int maxCacheBytes = (hasLargeHeap() ? 12 : 6) * 1024 * 1024;
+                ContributorsCloudTileDrawable tiles = new ContributorsCloudTileDrawable(index,
+                        colorForeground, colorSelected, maxCacheBytes);
+                tiles.setSelectedEntry(selected);
+                tiles.renderBaseLevel();
+                drawable = tiles;
+            }
+        }
+
+        // Calculate focus
+        float focusX = -1, focusY = -1;
+        if (selected != null) {
+            final int bsize = ContributorsCloudDrawable.CLOUD_SIZE;
+            float[] size = new float[2];
+            new ContributorsCloudRenderer().measure(selected, size);
+            float w = size[0];
+            float h = size[1];
+
+            int iw = mImageView.getWidth();
+            int ih = mImageView.getHeight();
+            int cx = iw / 2;
+            int cy = ih / 2;
+            int cbx = bsize / 2;
+            int cby = bsize / 2;
+            float cw = 0f;
+            float ch = 0f;
+            if (selected.mRotation == 0) {
+                cw = translate(w, bsize, Math.min(iw, ih)) / 2;
+                ch = translate(h, bsize, Math.min(iw, ih)) / 2;
+            } else {
+                cw = translate(h, bsize, Math.min(iw, ih)) / 2;
+                ch = translate(w, bsize, Math.min(iw, ih)) / 2;
+            }
+
+            focusX = cx + translate(selected.mX - cbx, bsize, iw) + cw;
+            focusY = cy + translate(selected.mY - cby, bsize, ih) + ch;
+        }
+
+        ViewInfo viewInfo = new ViewInfo();
+        viewInfo.mDrawable = drawable;
+        viewInfo.mSelectedEntry = selected;
+        viewInfo.mFocusX = focusX;
+        viewInfo.mFocusY = focusY;
+        return viewInfo;
+    }
+
+    private ContributorsCloudIndex loadCloudIndex(Context context) {
+        if (mCloudIndex != null) {
+            return mCloudIndex;
+        }
+
+        List<ContributorsCloudEntry> entries = new ArrayList<>();
+        ContributorsCloudAssetStore store = getAssetStore(context);
+        if (store == null || !loadCloudEntries(store, entries)) {
+            entries.clear();
+            if (!loadCloudEntries(context, entries)) {
+                return null;
+            }
+        }
+
+        mCloudIndex = new ContributorsCloudIndex(entries, ContributorsCloudDrawable.CLOUD_SIZE);
+        return mCloudIndex;
+    }
+
+    private boolean loadCloudEntries(ContributorsCloudAssetStore store,
+            final List<ContributorsCloudEntry> entries) {
+        // Extract original image size
+        final int[] osize = new int[]{0};
+        store.scanTable("info", new RowCallback() {
+            @Override
+            public boolean onRow(Row row) {
+                if ("orig_size".equals(row.getString(INFO_KEY))) {
+                    osize[0] = (int) row.getLong(INFO_VALUE);
+                    return false;
+                }
+                return true;
+            }
+        });
+        if (osize[0] <= 0) {
+            return false;
+        }
+
+        // Read the metadata table in place
+        return store.scanTable("metadata", new RowCallback() {
+            @Override
+            public boolean onRow(Row row) {
+                entries.add(createCloudEntry((int) row.getLong(METADATA_ID),
+                        row.getString(METADATA_NAME),
+                        (float) row.getDouble(METADATA_X), (float) row.getDouble(METADATA_Y),
+                        (int) row.getLong(METADATA_R), (float) row.getDouble(METADATA_FS),
+                        osize[0]));
+                return true;
+            }
+        });
+    }
+
+    private boolean loadCloudEntries(Context context, List<ContributorsCloudEntry> entries) {
         // Open the database
         SQLiteDatabase db = getDatabase(context, true);
         if (db == null) {
             // We don't have a valid database reference
-            return null;
+            return false;
         }
 
         // Extract original image size
         Cursor c = db.rawQuery("select value from info where key = ?;", new String[]{"orig_size"});
         if (c == null || !c.moveToFirst()) {
             // We don't have a valid cursor reference
-            return null;
+            return false;
         }
         int osize = c.getInt(0);
         c.close();
@@ -501,106 +781,50 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         c = db.rawQuery("select id, name, x, y, r, fs from metadata;", null);
         if (c == null) {
             // We don't have a valid cursor reference
-            return null;
+            return false;
         }
         try {
-            TypedValue colorAccent = new TypedValue();
-            context.getTheme().resolveAttribute(com.android.internal.R.attr.colorAccent,
-                    colorAccent, true);
-            int colorForeground = res.getColor(colorAccent.resourceId);
-            int colorSelected = res.getColor(R.color.contributors_cloud_selected_color);
-            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
-
-            // Create a bitmap large enough to hold the cloud (use large bitmap when available)
-            int bsize = hasLargeHeap() ? 2048 : 1024;
-            bitmap = Bitmap.createBitmap(bsize, bsize, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-
-            // Draw every contributor name
             while (c.moveToNext()) {
-                int id = c.getInt(c.getColumnIndexOrThrow("id"));
-
-                String name = c.getString(c.getColumnIndexOrThrow("name"));
-                float x = translate(c.getFloat(c.getColumnIndexOrThrow("x")), osize, bsize);
-                float y = translate(c.getFloat(c.getColumnIndexOrThrow("y")), osize, bsize);
-                int r = c.getInt(c.getColumnIndexOrThrow("r"));
-                float fs = translate(c.getFloat(c.getColumnIndexOrThrow("fs")), osize, bsize);
-                if (id < 0) {
-                    y -= translate(fs, osize, bsize);
-                }
-
-                // Choose the correct paint
-                paint.setColor(selectedId == id ? colorSelected : colorForeground);
-                paint.setTextSize(fs);
-
-                // Check text rotation
-                float w = 0f, h = 0f;
-                if (selectedId == id || r != 0) {
-                    Rect bounds = new Rect();
-                    paint.getTextBounds(name, 0, name.length(), bounds);
-                    h = bounds.height();
-                }
-                if (selectedId == id || r == -1) {
-                    w = paint.measureText(name);
-                }
-                if (r == 0) {
-                    // Horizontal
-                    canvas.drawText(name, x, y, paint);
-                } else {
-                    if (r == -1) {
-                        // Vertical (-90 rotation)
-                        canvas.save();
-                        canvas.translate(h, w - h);
-                        canvas.rotate(-90, x, y);
-                        canvas.drawText(name, x, y, paint);
-                        canvas.restore();
-                    } else {
-                        // Vertical (+90 rotation)
-                        canvas.save();
-                        canvas.translate(h/2, -h);
-                        canvas.rotate(90, x, y);
-                        canvas.drawText(name, x, y, paint);
-                        canvas.restore();
-                    }
-                }
-
-                // Calculate focus
-                if (selectedId == id) {
-                    int iw = mImageView.getWidth();
-                    int ih = mImageView.getHeight();
-                    int cx = iw / 2;
-                    int cy = ih / 2;
-                    int cbx = bsize / 2;
-                    int cby = bsize / 2;
-                    float cw = 0f;
-                    float ch = 0f;
-                    if (r == 0) {
-                        cw = translate(w, bsize, Math.min(iw, ih)) / 2;
-                        ch = translate(h, bsize, Math.min(iw, ih)) / 2;
-                    } else {
-                        cw = translate(h, bsize, Math.min(iw, ih)) / 2;
-                        ch = translate(w, bsize, Math.min(iw, ih)) / 2;
-                    }
-
-                    focusX = cx + translate(x - cbx, bsize, iw) + cw;
-                    focusY = cy + translate(y - cby, bsize, ih) + ch;
-                }
+                entries.add(createCloudEntry(c.getInt(0), c.getString(1), c.getFloat(2),
+                        c.getFloat(3), c.getInt(4), c.getFloat(5), osize));
             }
-
         } finally {
             c.close();
         }
+        return true;
+    }
 
-        // Return the bitmap
-        ViewInfo viewInfo = new ViewInfo();
-        viewInfo.mBitmap = bitmap;
-        viewInfo.mFocusX = focusX;
-        viewInfo.mFocusY = focusY;
-        return viewInfo;
+    private ContributorsCloudEntry createCloudEntry(int id, String name, float x, float y,
+            int r, float fs, int osize) {
+        final int bsize = ContributorsCloudDrawable.CLOUD_SIZE;
+        x = translate(x, osize, bsize);
+        y = translate(y, osize, bsize);
+        fs = translate(fs, osize, bsize);
+        if (id < 0) {
+            y -= translate(fs, osize, bsize);
+        }
+        return new ContributorsCloudEntry(id, name, x, y, r, fs);
+    }
+
+    private synchronized ContributorsCloudAssetStore getAssetStore(Context context) {
+        if (!mAssetStoreOpened) {
+            mAssetStore = ContributorsCloudAssetStore.open(context, DB_NAME);
+            mAssetStoreOpened = true;
+        }
+        return mAssetStore;
+    }
+
+    private SQLiteDatabase getDatabase(Context context, boolean retryCopyIfOpenFails) {
+        synchronized (mDatabaseLock) {
+            return getDatabaseLocked(context, retryCopyIfOpenFails);
+        }
     }
 
-    private synchronized SQLiteDatabase getDatabase(Context context, boolean retryCopyIfOpenFails) {
+    private SQLiteDatabase getDatabaseLocked(Context context, boolean retryCopyIfOpenFails) {
         if (mDatabase == null) {
+            // Only costs a file stat when the extracted database is up to date
+            extractContributorsCloudDatabase(context);
+
             File dbPath = context.getDatabasePath(DB_NAME);
             try {
                 mDatabase = SQLiteDatabase.openDatabase(dbPath.getAbsolutePath(),
@@ -609,6 +833,8 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                     Log.e(TAG, "Cannot open cloud database: " + DB_NAME + ". db == null");
                     return null;
                 }
+                mHasSearchIndex = hasTable(mDatabase, SEARCH_INDEX_TABLE);
+                mHasSummary = hasTable(mDatabase, SUMMARY_TABLE);
                 return mDatabase;
 
             } catch (SQLException ex) {
@@ -620,10 +846,12 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                         // Ignore
                     }
                 }
+                mDatabase = null;
 
                 if (retryCopyIfOpenFails) {
-                    extractContributorsCloudDatabase(context);
-                    mDatabase = getDatabase(context, false);
+                    // The extracted copy may be corrupt, replace it
+                    extractContributorsCloudDatabase(context, true);
+                    return getDatabaseLocked(context, false);
                 }
             }
 
@@ -633,23 +861,98 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         return mDatabase;
     }
 
+    /**
+     * @return the extracted database if a search already opened it, without extracting it
+     */
+    private SQLiteDatabase getOpenDatabase() {
+        synchronized (mDatabaseLock) {
+            return mDatabase;
+        }
+    }
+
     private void loadContributorsInfo(Context context) {
+        if (mLastUpdate != -1) {
+            // The shipped data doesn't change while the fragment lives
+            return;
+        }
+
+        // Precomputed when the database was extracted
+        SQLiteDatabase db = getOpenDatabase();
+        if (db != null && mHasSummary && loadSummary(db)) {
+            return;
+        }
+
+        // Computed by a previous open of the same shipped data
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final String stamp = getDatabaseStamp(context);
+        if (stamp != null && stamp.equals(prefs.getString(PREF_SUMMARY_STAMP, null))) {
+            mTotalContributors = prefs.getInt(PREF_SUMMARY_TOTAL_CONTRIBUTORS, -1);
+            mTotalCommits = prefs.getInt(PREF_SUMMARY_TOTAL_COMMITS, -1);
+            mLastUpdate = prefs.getLong(PREF_SUMMARY_LAST_UPDATE, -1);
+            if (mTotalContributors != -1 && mTotalCommits != -1 && mLastUpdate != -1) {
+                return;
+            }
+        }
+        // Drop what a partial summary had
         mTotalContributors = -1;
         mTotalCommits = -1;
         mLastUpdate = -1;
 
-        // Open the database
+        // Scan all the contributors only once per shipped data
+        if (computeContributorsInfo(context) && stamp != null) {
+            prefs.edit()
+                    .putString(PREF_SUMMARY_STAMP, stamp)
+                    .putInt(PREF_SUMMARY_TOTAL_CONTRIBUTORS, mTotalContributors)
+                    .putInt(PREF_SUMMARY_TOTAL_COMMITS, mTotalCommits)
+                    .putLong(PREF_SUMMARY_LAST_UPDATE, mLastUpdate)
+                    .apply();
+        }
+    }
+
+    private boolean computeContributorsInfo(Context context) {
+        ContributorsCloudAssetStore store = getAssetStore(context);
+        if (store != null) {
+            final int[] totals = new int[2];
+            final long[] lastUpdate = new long[]{-1};
+            boolean read = store.scanTable("metadata", new RowCallback() {
+                @Override
+                public boolean onRow(Row row) {
+                    if (row.getLong(METADATA_ID) > 0) {
+                        totals[0]++;
+                        totals[1] += (int) row.getLong(METADATA_COMMITS);
+                    }
+                    return true;
+                }
+            }) && store.scanTable("info", new RowCallback() {
+                @Override
+                public boolean onRow(Row row) {
+                    if ("date".equals(row.getString(INFO_KEY))) {
+                        lastUpdate[0] = row.getLong(INFO_VALUE);
+                        return false;
+                    }
+                    return true;
+                }
+            });
+            if (read) {
+                mTotalContributors = totals[0];
+                mTotalCommits = totals[1];
+                mLastUpdate = lastUpdate[0];
+                return mLastUpdate != -1;
+            }
+        }
+
+        // The asset can't be read in place, use an extracted copy
         SQLiteDatabase db = getDatabase(context, true);
         if (db == null) {
             // We don't have a valid database reference
-            return;
+            return false;
         }
 
         // Total contributors
         Cursor c = db.rawQuery("select count(*) from metadata where id > 0;", null);
         if (c == null || !c.moveToFirst()) {
             // We don't have a valid cursor reference
-            return;
+            return false;
         }
         mTotalContributors = c.getInt(0);
         c.close();
@@ -658,7 +961,7 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         c = db.rawQuery("select sum(commits) from metadata where id > 0;", null);
         if (c == null || !c.moveToFirst()) {
             // We don't have a valid cursor reference
-            return;
+            return false;
         }
         mTotalCommits = c.getInt(0);
         c.close();
@@ -667,24 +970,76 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         c = db.rawQuery("select value from info where key = ?;", new String[]{"date"});
         if (c == null || !c.moveToFirst()) {
             // We don't have a valid cursor reference
-            return;
+            return false;
         }
         mLastUpdate = c.getLong(0);
         c.close();
+        return true;
+    }
+
+    private boolean loadSummary(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("select key, value from " + SUMMARY_TABLE + ";", null);
+        if (c == null) {
+            // We don't have a valid cursor reference
+            return false;
+        }
+        try {
+            while (c.moveToNext()) {
+                final String key = c.getString(0);
+                if (SUMMARY_TOTAL_CONTRIBUTORS.equals(key)) {
+                    mTotalContributors = c.getInt(1);
+                } else if (SUMMARY_TOTAL_COMMITS.equals(key)) {
+                    mTotalCommits = c.getInt(1);
+                } else if (SUMMARY_LAST_UPDATE.equals(key)) {
+                    mLastUpdate = c.getLong(1);
+                }
+            }
+        } finally {
+            c.close();
+        }
+        return mTotalContributors != -1 && mTotalCommits != -1 && mLastUpdate != -1;
     }
 
     private void loadUserInfo(Context context) {
-        // Open the database
-        SQLiteDatabase db = getDatabase(context, true);
+        // The summary comes with an index over the contributor ids
+        SQLiteDatabase db = getOpenDatabase();
+        if (db != null && mHasSummary) {
+            loadUserInfo(db);
+            return;
+        }
+
+        ContributorsCloudAssetStore store = getAssetStore(context);
+        if (store != null) {
+            boolean read = store.scanTable("metadata", new RowCallback() {
+                @Override
+                public boolean onRow(Row row) {
+                    if (row.getLong(METADATA_ID) != mSelectedContributor) {
+                        return true;
+                    }
+                    mContributorName = row.getString(METADATA_NAME);
+                    mContributorNick = row.getString(METADATA_USERNAME);
+                    mContributorCommits = (int) row.getLong(METADATA_COMMITS);
+                    return false;
+                }
+            });
+            if (read) {
+                return;
+            }
+        }
+
+        // The asset can't be read in place, use an extracted copy
+        db = getDatabase(context, true);
         if (db == null) {
             // We don't have a valid database reference
             return;
         }
+        loadUserInfo(db);
+    }
 
-        // Total contributors
+    private void loadUserInfo(SQLiteDatabase db) {
         String[] args = new String[]{String.valueOf(mSelectedContributor)};
-        Cursor c = db.rawQuery("select m1.name, m1.username, m1.commits " +
-                               "from metadata as m1 where m1.id = ?;", args);
+        Cursor c = db.rawQuery("select name, username, commits from metadata where id = ?;",
+                args);
         if (c == null || !c.moveToFirst()) {
             // We don't have a valid cursor reference
             return;
@@ -732,18 +1087,35 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
     private List<ContributorsDataHolder> performFilter(Context context, String query) {
         // Open the database
-        SQLiteDatabase db = getDatabase(context, false);
+        SQLiteDatabase db = getDatabase(context, true);
         if (db == null) {
             // We don't have a valid database reference
             return new ArrayList<>();
         }
 
-        // Total contributors
-        String[] args = new String[]{String.valueOf(query.replaceAll("\\|", ""))};
-        Cursor c = db.rawQuery(
-                "select id, name || case when username is null then '' else ' <'||username||'>' end contributor " +
-                "from metadata where lower(filter) like lower('%' || ? || '%') and id > 0 " +
-                "order by commits desc", args);
+        Cursor c;
+        String limit = String.valueOf(SEARCH_MAX_RESULTS);
+        if (mHasSearchIndex) {
+            String match = toSearchIndexQuery(query);
+            if (match == null) {
+                // Nothing to search for
+                return new ArrayList<>();
+            }
+            String[] args = new String[]{match, limit};
+            c = db.rawQuery(
+                    "select m.id, m.name || case when m.username is null then '' " +
+                    "else ' <'||m.username||'>' end contributor " +
+                    "from " + SEARCH_INDEX_TABLE + " f join metadata m on m.rowid = f.docid " +
+                    "where " + SEARCH_INDEX_TABLE + " match ? and m.id > 0 " +
+                    "order by m.commits desc limit ?", args);
+        } else {
+            // Database extracted before the search index existed
+            String[] args = new String[]{String.valueOf(query.replaceAll("\\|", "")), limit};
+            c = db.rawQuery(
+                    "select id, name || case when username is null then '' else ' <'||username||'>' end contributor " +
+                    "from metadata where lower(filter) like lower('%' || ? || '%') and id > 0 " +
+                    "order by commits desc limit ?", args);
+        }
         if (c == null) {
             // We don't have a valid cursor reference
             return new ArrayList<>();
@@ -759,14 +1131,127 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         return results;
     }
 
+    /**
+     * Converts the text typed by the user into a full text query where every word
+     * is a prefix, or returns null if there is nothing to search for.
+     */
+    private static String toSearchIndexQuery(String query) {
+        StringBuilder sb = new StringBuilder();
+        for (String term : query.split("[\\s|\"*():^\\-]+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            // Lower case, so operators like OR or NOT are searched as plain words
+            sb.append(term.toLowerCase(Locale.ROOT)).append('*');
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private static boolean hasTable(SQLiteDatabase db, String table) {
+        Cursor c = db.rawQuery("select 1 from sqlite_master where type = 'table' and name = ?;",
+                new String[]{table});
+        if (c == null) {
+            return false;
+        }
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Creates the tables derived from the shipped data in a freshly extracted database.
+     * Every table is optional, readers fall back to the original tables without it.
+     */
+    private static void createDerivedTables(File databasePath) {
+        SQLiteDatabase db = null;
+        try {
+            db = SQLiteDatabase.openDatabase(databasePath.getAbsolutePath(),
+                    null, SQLiteDatabase.OPEN_READWRITE);
+            createSearchIndex(db);
+            createSummary(db);
+        } catch (SQLException ex) {
+            Log.e(TAG, "Cannot open extracted contributors database", ex);
+        } finally {
+            if (db != null && db.isOpen()) {
+                db.close();
+            }
+        }
+    }
+
+    private static void createSearchIndex(SQLiteDatabase db) {
+        try {
+            db.beginTransaction();
+            try {
+                db.execSQL("drop table if exists " + SEARCH_INDEX_TABLE + ";");
+                db.execSQL("create virtual table " + SEARCH_INDEX_TABLE + " using fts4(" +
+                        "content=\"metadata\", name, username, filter, prefix=\"1,2,3\");");
+                db.execSQL("insert into " + SEARCH_INDEX_TABLE + "(" + SEARCH_INDEX_TABLE + ") " +
+                        "values('rebuild');");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException ex) {
+            // Search falls back to scanning the metadata table
+            Log.e(TAG, "Failed to create contributors search index", ex);
+        }
+    }
+
+    private static void createSummary(SQLiteDatabase db) {
+        try {
+            db.beginTransaction();
+            try {
+                db.execSQL("drop table if exists " + SUMMARY_TABLE + ";");
+                db.execSQL("create table " + SUMMARY_TABLE + " (" +
+                        "key text primary key, value integer not null);");
+                db.execSQL("insert into " + SUMMARY_TABLE + " " +
+                        "select '" + SUMMARY_TOTAL_CONTRIBUTORS + "', count(*) " +
+                        "from metadata where id > 0;");
+                db.execSQL("insert into " + SUMMARY_TABLE + " " +
+                        "select '" + SUMMARY_TOTAL_COMMITS + "', ifnull(sum(commits), 0) " +
+                        "from metadata where id > 0;");
+                db.execSQL("insert into " + SUMMARY_TABLE + " " +
+                        "select '" + SUMMARY_LAST_UPDATE + "', value " +
+                        "from info where key = 'date';");
+                db.execSQL("create index if not exists metadata_id on metadata(id);");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException ex) {
+            // Statistics fall back to aggregating the metadata table
+            Log.e(TAG, "Failed to create contributors summary", ex);
+        }
+    }
+
     private void onContributorSelected(ContributorsDataHolder contributor) {
         onContributorSelected(contributor.mId);
     }
 
+    private void onCloudTapped(float x, float y) {
+        if (mCloudIndex == null) {
+            return;
+        }
+        final int bsize = ContributorsCloudDrawable.CLOUD_SIZE;
+        ContributorsCloudEntry entry = mCloudIndex.hitTest(x * bsize, y * bsize);
+        if (entry == null || entry.mId <= 0 || entry.mId == mSelectedContributor) {
+            // Only real contributors can be selected
+            return;
+        }
+        mSelectedContributor = entry.mId;
+        ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(true, false);
+        task.executeOnExecutor(mExecutor);
+    }
+
     private void onContributorSelected(int contributorId) {
         mSelectedContributor = contributorId;
         ContributorCloudLoaderTask task = new ContributorCloudLoaderTask(true, true);
-        task.execute();
+        task.executeOnExecutor(mExecutor);
         if (mSearchMenuItem != null) {
             mSearchMenuItem.collapseActionView();
         }
@@ -777,27 +1262,73 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
         return am.getMemoryClass() >= 96;
     }
 
+    private boolean isVectorCloudSupported() {
+        // Redrawing every visible name on each frame is only cheap when hardware accelerated
+        final Activity activity = getActivity();
+        if ((activity.getWindow().getAttributes().flags
+                & WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED) == 0) {
+            return false;
+        }
+        ActivityManager am = (ActivityManager) activity.getSystemService(Context.ACTIVITY_SERVICE);
+        return !am.isLowRamDevice();
+    }
+
     private float translate(float v, int ssize, int dsize) {
         return (v * dsize) / ssize;
     }
 
 
+    /**
+     * Extracts the contributors database from the assets, unless the extracted copy already
+     * matches the installed package. In the common case this only costs a file stat.
+     */
     public static void extractContributorsCloudDatabase(Context context) {
-        final int BUFFER = 1024;
+        extractContributorsCloudDatabase(context, false);
+    }
+
+    /**
+     * @param force whether to delete and extract again a copy that looks up to date
+     */
+    private static synchronized void extractContributorsCloudDatabase(Context context,
+            boolean force) {
+        final File databasePath = context.getDatabasePath(DB_NAME);
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final String stamp = getDatabaseStamp(context);
+        if (force) {
+            context.deleteDatabase(DB_NAME);
+        } else if (stamp != null && stamp.equals(prefs.getString(PREF_DB_STAMP, null))
+                && databasePath.length() == prefs.getLong(PREF_DB_LENGTH, -1)) {
+            // The extracted database is up to date
+            return;
+        }
+
+        final int BUFFER = 64 * 1024;
         InputStream is = null;
         OutputStream os = null;
-        File databasePath = context.getDatabasePath(DB_NAME);
+        File tempPath = new File(databasePath.getPath() + ".tmp");
         try {
             databasePath.getParentFile().mkdir();
-            is = context.getResources().getAssets().open(DB_NAME, AssetManager.ACCESS_BUFFER);
-            os = new FileOutputStream(databasePath);
+            is = context.getResources().getAssets().open(DB_NAME, AssetManager.ACCESS_STREAMING);
+            os = new FileOutputStream(tempPath);
             int read = -1;
             byte[] data = new byte[BUFFER];
             while ((read = is.read(data, 0, BUFFER)) != -1) {
                 os.write(data, 0, read);
             }
+            os.close();
+            os = null;
+            createDerivedTables(tempPath);
+
+            // Replace the previous copy atomically, so readers never see a partial database
+            if (!tempPath.renameTo(databasePath)) {
+                throw new IOException("Cannot rename " + tempPath + " to " + databasePath);
+            }
+            prefs.edit()
+                    .putString(PREF_DB_STAMP, stamp)
+                    .putLong(PREF_DB_LENGTH, databasePath.length())
+                    .apply();
         } catch (IOException ex) {
-            Log.e(TAG, "Failed to extract contributors database");
+            Log.e(TAG, "Failed to extract contributors database", ex);
         } finally {
             if (is != null) {
                 try {
@@ -806,6 +1337,26 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                     // Ignore
                 }
             }
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException ex) {
+                    // Ignore
+                }
+            }
+            tempPath.delete();
+            new File(tempPath.getPath() + "-journal").delete();
+        }
+    }
+
+    private static String getDatabaseStamp(Context context) {
+        try {
+            // The package may be replaced by a system update without a version code change
+            PackageInfo pi = context.getPackageManager().getPackageInfo(
+                    context.getPackageName(), 0);
+            return pi.versionCode + ":" + pi.lastUpdateTime + ":" + DB_SCHEMA_VERSION;
+        } catch (PackageManager.NameNotFoundException ex) {
+            return null;
         }
     }
 
@@ -816,6 +1367,17 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
                 public List<SearchIndexableRaw> getRawDataToIndex(Context context) {
 
                     // Index the top 100 contributors, for fun :)
+                    ContributorsCloudAssetStore store =
+                            ContributorsCloudAssetStore.open(context, DB_NAME);
+                    if (store != null) {
+                        List<SearchIndexableRaw> result = getTopContributors(context, store);
+                        if (result != null) {
+                            return result;
+                        }
+                    }
+
+                    // The asset can't be read in place, use an extracted copy
+                    extractContributorsCloudDatabase(context);
                     File dbPath = context.getDatabasePath(DB_NAME);
                     SQLiteDatabase db = null;
                     try {
@@ -848,5 +1410,41 @@ public class ContributorsCloudFragment extends Fragment implements SearchView.On
 
                     return result;
                 }
+
+                private List<SearchIndexableRaw> getTopContributors(Context context,
+                        ContributorsCloudAssetStore store) {
+                    final List<ContributorCommits> contributors = new ArrayList<>();
+                    boolean read = store.scanTable("metadata", new RowCallback() {
+                        @Override
+                        public boolean onRow(Row row) {
+                            ContributorCommits contributor = new ContributorCommits();
+                            contributor.mId = (int) row.getLong(METADATA_ID);
+                            contributor.mUsername = row.getString(METADATA_USERNAME);
+                            contributor.mCommits = row.getLong(METADATA_COMMITS);
+                            contributors.add(contributor);
+                            return true;
+                        }
+                    });
+                    if (!read) {
+                        return null;
+                    }
+                    Collections.sort(contributors, new Comparator<ContributorCommits>() {
+                        @Override
+                        public int compare(ContributorCommits lhs, ContributorCommits rhs) {
+                            return Long.compare(rhs.mCommits, lhs.mCommits);
+                        }
+                    });
+
+                    List<SearchIndexableRaw> result = new ArrayList<>();
+                    for (int i = 0; i < Math.min(100, contributors.size()); i++) {
+                        ContributorCommits contributor = contributors.get(i);
+                        SearchIndexableRaw raw = new SearchIndexableRaw(context);
+                        raw.key = KEY_PREFIX + contributor.mId;
+                        raw.rank = 10;
+                        raw.title = contributor.mUsername;
+                        result.add(raw);
+                    }
+                    return result;
+                }
             };
 }
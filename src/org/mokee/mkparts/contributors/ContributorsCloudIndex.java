@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.RectF;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over the bounds of the cloud names, built once when the cloud is loaded.
+ * Used to draw only the names intersecting an area and to resolve taps to a contributor.
+ * Queries don't modify the index, so it can be shared between threads.
+ */
+class ContributorsCloudIndex {
+
+    private static final int GRID_SIZE = 32;
+
+    private final List<ContributorsCloudEntry> mEntries;
+    private final float mCellSize;
+    // Positions (in mEntries) of the names overlapping each cell, in drawing order
+    private final int[][] mCells = new int[GRID_SIZE * GRID_SIZE][];
+
+    /**
+     * @param entries the names of the cloud, in drawing order
+     * @param cloudSize the size of the cloud coordinate space
+     */
+    ContributorsCloudIndex(List<ContributorsCloudEntry> entries, int cloudSize) {
+        mEntries = entries;
+        mCellSize = (float) cloudSize / GRID_SIZE;
+
+        // Compute the bounds of every name and count the names per cell
+        ContributorsCloudRenderer renderer = new ContributorsCloudRenderer();
+        int[] counts = new int[mCells.length];
+        for (ContributorsCloudEntry entry : entries) {
+            renderer.getBounds(entry, entry.mBounds);
+            final int left = toCell(entry.mBounds.left);
+            final int right = toCell(entry.mBounds.right);
+            final int top = toCell(entry.mBounds.top);
+            final int bottom = toCell(entry.mBounds.bottom);
+            for (int cy = top; cy <= bottom; cy++) {
+                for (int cx = left; cx <= right; cx++) {
+                    counts[cy * GRID_SIZE + cx]++;
+                }
+            }
+        }
+
+        // Fill the cells
+        for (int i = 0; i < mCells.length; i++) {
+            mCells[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        final int count = entries.size();
+        for (int i = 0; i < count; i++) {
+            final RectF bounds = entries.get(i).mBounds;
+            final int left = toCell(bounds.left);
+            final int right = toCell(bounds.right);
+            final int top = toCell(bounds.top);
+            final int bottom = toCell(bounds.bottom);
+            for (int cy = top; cy <= bottom; cy++) {
+                for (int cx = left; cx <= right; cx++) {
+                    final int cell = cy * GRID_SIZE + cx;
+                    mCells[cell][counts[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    List<ContributorsCloudEntry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * Collects the names whose bounds intersect an area, in drawing order.
+     */
+    void query(RectF area, List<ContributorsCloudEntry> out) {
+        final int left = toCell(area.left);
+        final int right = toCell(area.right);
+        final int top = toCell(area.top);
+        final int bottom = toCell(area.bottom);
+
+        int size = 0;
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                size += mCells[cy * GRID_SIZE + cx].length;
+            }
+        }
+        int[] candidates = new int[size];
+        size = 0;
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                final int[] cell = mCells[cy * GRID_SIZE + cx];
+                System.arraycopy(cell, 0, candidates, size, cell.length);
+                size += cell.length;
+            }
+        }
+
+        // Names spanning several cells are seen more than once
+        Arrays.sort(candidates);
+        int last = -1;
+        for (int position : candidates) {
+            if (position != last) {
+                ContributorsCloudEntry entry = mEntries.get(position);
+                if (RectF.intersects(entry.mBounds, area)) {
+                    out.add(entry);
+                }
+                last = position;
+            }
+        }
+    }
+
+    /**
+     * Returns the name drawn at a point of the cloud, or null if there is none.
+     */
+    ContributorsCloudEntry hitTest(float x, float y) {
+        final int[] cell = mCells[toCell(y) * GRID_SIZE + toCell(x)];
+        // Names drawn last are on top
+        for (int i = cell.length - 1; i >= 0; i--) {
+            ContributorsCloudEntry entry = mEntries.get(cell[i]);
+            if (entry.mBounds.contains(x, y)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private int toCell(float v) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) (v / mCellSize)));
+    }
+}
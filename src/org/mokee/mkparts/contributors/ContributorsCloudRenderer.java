@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The CyanogenMod Project
+ * Copyright (C) 2015-2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Draws contributor names in the cloud coordinate space. Instances hold a mutable paint,
+ * so every thread that renders the cloud must use its own renderer.
+ */
+class ContributorsCloudRenderer {
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
+
+    private ContributorsCloudTextLayout getLayout(ContributorsCloudEntry entry) {
+        mPaint.setTextSize(entry.mFontSize);
+        return ContributorsCloudTextLayout.get(entry, mPaint);
+    }
+
+    /**
+     * Measures the unrotated text of an entry.
+     *
+     * @param entry the entry to measure
+     * @param outSize receives the text width and height, in that order
+     */
+    void measure(ContributorsCloudEntry entry, float[] outSize) {
+        ContributorsCloudTextLayout layout = getLayout(entry);
+        outSize[0] = layout.mWidth;
+        outSize[1] = layout.mHeight;
+    }
+
+    /**
+     * Computes the area covered by an entry once drawn, rotation included.
+     */
+    void getBounds(ContributorsCloudEntry entry, RectF outBounds) {
+        outBounds.set(getLayout(entry).mBounds);
+        outBounds.offset(entry.mX, entry.mY);
+    }
+
+    void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+    }
+
+    void draw(Canvas canvas, ContributorsCloudEntry entry, int color) {
+        ContributorsCloudTextLayout layout = getLayout(entry);
+        mPaint.setColor(color);
+
+        if (layout.mRotation == 0f) {
+            // Horizontal
+            canvas.drawText(entry.mName, entry.mX, entry.mY, mPaint);
+        } else {
+            // Vertical
+            canvas.save();
+            canvas.translate(entry.mX + layout.mOffsetX, entry.mY + layout.mOffsetY);
+            canvas.rotate(layout.mRotation);
+            canvas.drawText(entry.mName, 0, 0, mPaint);
+            canvas.restore();
+        }
+    }
+}
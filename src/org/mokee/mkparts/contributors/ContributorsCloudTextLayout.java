@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+/**
+ * Precomputed measures and transformation of a cloud name. Layouts don't depend on the
+ * position of the name, so they are cached process wide by (name, font size, rotation) and
+ * survive the fragment being recreated, e.g. on configuration or accent color changes.
+ */
+final class ContributorsCloudTextLayout {
+
+    private static final int CACHE_SIZE = 2048;
+
+    private static final LruCache<String, ContributorsCloudTextLayout> sCache =
+            new LruCache<>(CACHE_SIZE);
+
+    // Measures of the unrotated text
+    final float mWidth;
+    final float mHeight;
+
+    // The text is drawn at the origin, after translating by (x + offset) and rotating
+    final float mOffsetX;
+    final float mOffsetY;
+    final float mRotation;
+
+    // Bounds of the drawn text, relative to the position of the name
+    final RectF mBounds = new RectF();
+
+    private ContributorsCloudTextLayout(Paint paint, String name, int rotation) {
+        Rect textBounds = new Rect();
+        paint.getTextBounds(name, 0, name.length(), textBounds);
+        mWidth = paint.measureText(name);
+        mHeight = textBounds.height();
+        mBounds.set(textBounds);
+
+        if (rotation == 0) {
+            // Horizontal
+            mOffsetX = 0f;
+            mOffsetY = 0f;
+            mRotation = 0f;
+        } else if (rotation == -1) {
+            // Vertical (-90 rotation)
+            mOffsetX = mHeight;
+            mOffsetY = mWidth - mHeight;
+            mRotation = -90f;
+        } else {
+            // Vertical (+90 rotation)
+            mOffsetX = mHeight / 2;
+            mOffsetY = -mHeight;
+            mRotation = 90f;
+        }
+
+        if (mRotation != 0f) {
+            Matrix matrix = new Matrix();
+            matrix.setRotate(mRotation);
+            matrix.postTranslate(mOffsetX, mOffsetY);
+            matrix.mapRect(mBounds);
+        }
+    }
+
+    /**
+     * Returns the layout of an entry, measuring it only if it isn't cached yet.
+     *
+     * @param paint a paint whose text size is the font size of the entry
+     */
+    static ContributorsCloudTextLayout get(ContributorsCloudEntry entry, Paint paint) {
+        ContributorsCloudTextLayout layout = entry.mLayout;
+        if (layout != null) {
+            return layout;
+        }
+
+        final String key = entry.mName + '\u0000' + entry.mFontSize + '\u0000' + entry.mRotation;
+        layout = sCache.get(key);
+        if (layout == null) {
+            layout = new ContributorsCloudTextLayout(paint, entry.mName, entry.mRotation);
+            sCache.put(key, layout);
+        }
+        entry.mLayout = layout;
+        return layout;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drawable that renders the contributors cloud as a pyramid of fixed-size tiles.
+ * <p>
+ * Level 0 covers the whole cloud with {@link #CLOUD_SIZE} pixels per side and every further
+ * level doubles the resolution. Only the tiles intersecting the current viewport are rendered,
+ * on a background thread, and kept in a memory bounded LRU cache. Each tile only draws the
+ * names that the {@link ContributorsCloudIndex} reports as intersecting it. Until a tile is
+ * available the closest cached tile of a coarser level is scaled up in its place.
+ * <p>
+ * Tiles are stored as alpha masks and tinted at draw time. The selected contributor is never
+ * baked into the tiles, it is drawn on top of them with the selection color. When the selection
+ * changes only the areas covered by the previous and the new selected names are repainted in
+ * the cached tiles.
+ */
+class ContributorsCloudTileDrawable extends ContributorsCloudDrawable {
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_LEVEL = 4;
+
+    private final List<ContributorsCloudEntry> mTileEntries = new ArrayList<>();
+    private final RectF mTileBounds = new RectF();
+    private final LruCache<Long, Bitmap> mTiles;
+    private final Set<Long> mPendingTiles = new HashSet<>();
+
+    private final HandlerThread mRenderThread;
+    private final Handler mRenderHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ContributorsCloudRenderer mTileRenderer = new ContributorsCloudRenderer();
+    private final ContributorsCloudRenderer mOverlayRenderer = new ContributorsCloudRenderer();
+
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+    private final RectF mDrawViewport = new RectF();
+    private final RectF mRenderViewport = new RectF();
+
+    private volatile int mGeneration;
+    private volatile boolean mReleased;
+
+    private final Runnable mInvalidateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mReleased) {
+                invalidateSelf();
+            }
+        }
+    };
+
+    /**
+     * @param index the spatial index over the names of the cloud
+     * @param foregroundColor the color of unselected names
+     * @param selectedColor the color of the selected name
+     * @param maxCacheBytes the upper bound of the memory used by rendered tiles
+     */
+    ContributorsCloudTileDrawable(ContributorsCloudIndex index, int foregroundColor,
+            int selectedColor, int maxCacheBytes) {
+        super(index, foregroundColor, selectedColor);
+        mTilePaint.setColor(foregroundColor);
+        mTiles = new LruCache<Long, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+
+        mRenderThread = new HandlerThread(ContributorsCloudTileDrawable.class.getSimpleName(),
+                Process.THREAD_PRIORITY_BACKGROUND);
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+    }
+
+    /**
+     * Synchronously renders the whole lowest resolution level, so the cloud can be shown
+     * without blank tiles. Must not be called from the main thread.
+     */
+    void renderBaseLevel() {
+        final int tiles = getTileCount(0);
+        for (int ty = 0; ty < tiles; ty++) {
+            for (int tx = 0; tx < tiles; tx++) {
+                synchronized (mTileRenderer) {
+                    mTiles.put(getTileKey(0, tx, ty), renderTile(0, tx, ty));
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onSelectedEntryChanged(ContributorsCloudEntry previous,
+            ContributorsCloudEntry entry) {
+        // Tiles being rendered right now may still contain the old selection
+        mGeneration++;
+
+        // Repaint only the affected areas of the cached tiles
+        final List<RectF> dirtyAreas = new ArrayList<>(2);
+        if (previous != null) {
+            dirtyAreas.add(new RectF(previous.mBounds));
+        }
+        if (entry != null) {
+            dirtyAreas.add(new RectF(entry.mBounds));
+        }
+        mRenderHandler.postAtFrontOfQueue(new Runnable() {
+            @Override
+            public void run() {
+                if (!mReleased) {
+                    repaintTiles(dirtyAreas);
+                    mMainHandler.removeCallbacks(mInvalidateRunnable);
+                    mMainHandler.post(mInvalidateRunnable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the render thread and drops every rendered tile.
+     */
+    @Override
+    void release() {
+        mReleased = true;
+        mRenderThread.quit();
+        mMainHandler.removeCallbacks(mInvalidateRunnable);
+        mTiles.evictAll();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final int level = getLevel(getViewport(mDrawViewport));
+        final float left = mDrawViewport.left;
+        final float top = mDrawViewport.top;
+        final float right = mDrawViewport.right;
+        final float bottom = mDrawViewport.bottom;
+
+        final int tiles = getTileCount(level);
+        final float tileSize = getTileSize(level);
+        final int firstX = clampTile((int) Math.floor(left / tileSize), tiles);
+        final int lastX = clampTile((int) Math.ceil(right / tileSize) - 1, tiles);
+        final int firstY = clampTile((int) Math.floor(top / tileSize), tiles);
+        final int lastY = clampTile((int) Math.ceil(bottom / tileSize) - 1, tiles);
+
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                mDstRect.set(tx * tileSize, ty * tileSize,
+                        (tx + 1) * tileSize, (ty + 1) * tileSize);
+                Bitmap tile = mTiles.get(getTileKey(level, tx, ty));
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, mDstRect, mTilePaint);
+                } else {
+                    requestTile(level, tx, ty);
+                    drawFallbackTile(canvas, level, tx, ty);
+                }
+            }
+        }
+
+        final ContributorsCloudEntry selected = getSelectedEntry();
+        if (selected != null) {
+            mOverlayRenderer.draw(canvas, selected, mSelectedColor);
+        }
+    }
+
+    private void drawFallbackTile(Canvas canvas, int level, int tx, int ty) {
+        for (int l = level - 1; l >= 0; l--) {
+            final int shift = level - l;
+            final int px = tx >> shift;
+            final int py = ty >> shift;
+            Bitmap parent = mTiles.get(getTileKey(l, px, py));
+            if (parent != null) {
+                final int size = TILE_SIZE >> shift;
+                final int sx = (tx - (px << shift)) * size;
+                final int sy = (ty - (py << shift)) * size;
+                mSrcRect.set(sx, sy, sx + size, sy + size);
+                canvas.drawBitmap(parent, mSrcRect, mDstRect, mTilePaint);
+                return;
+            }
+        }
+
+        // Nothing cached at all, make sure there will be something to show next time
+        requestTile(0, tx >> level, ty >> level);
+    }
+
+    private void requestTile(final int level, final int tx, final int ty) {
+        final Long key = getTileKey(level, tx, ty);
+        synchronized (mPendingTiles) {
+            if (!mPendingTiles.add(key)) {
+                return;
+            }
+        }
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!mReleased && isTileWanted(level, tx, ty)) {
+                        final int generation = mGeneration;
+                        synchronized (mTileRenderer) {
+                            Bitmap tile = renderTile(level, tx, ty);
+                            if (generation == mGeneration) {
+                                mTiles.put(key, tile);
+                            }
+                        }
+                        mMainHandler.removeCallbacks(mInvalidateRunnable);
+                        mMainHandler.post(mInvalidateRunnable);
+                    }
+                } finally {
+                    synchronized (mPendingTiles) {
+                        mPendingTiles.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean isTileWanted(int level, int tx, int ty) {
+        if (level == 0) {
+            // The base level is the fallback of every other level
+            return true;
+        }
+        final float tileSize = getTileSize(level);
+        return level == getLevel(getViewport(mRenderViewport))
+                && mRenderViewport.intersects(tx * tileSize, ty * tileSize,
+                        (tx + 1) * tileSize, (ty + 1) * tileSize);
+    }
+
+    private Bitmap renderTile(int level, int tx, int ty) {
+        final float tileSize = getTileSize(level);
+
+        Bitmap tile = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ALPHA_8);
+        Canvas canvas = createTileCanvas(tile, level, tx, ty);
+
+        // Leave a pixel of margin for the antialiasing
+        final float margin = 1f / (1 << level);
+        mTileBounds.set(tx * tileSize - margin, ty * tileSize - margin,
+                (tx + 1) * tileSize + margin, (ty + 1) * tileSize + margin);
+        drawEntries(canvas, mTileBounds);
+        return tile;
+    }
+
+    private void repaintTiles(List<RectF> dirtyAreas) {
+        // The areas are repainted using the current selection, so the order in which
+        // repaints of consecutive selection changes run doesn't matter
+        synchronized (mTileRenderer) {
+            for (Map.Entry<Long, Bitmap> cached : mTiles.snapshot().entrySet()) {
+                final long key = cached.getKey();
+                final int level = (int) (key >> 40);
+                final int tx = (int) ((key >> 20) & 0xfffff);
+                final int ty = (int) (key & 0xfffff);
+                final float tileSize = getTileSize(level);
+                final float margin = 1f / (1 << level);
+
+                Bitmap tile = null;
+                Canvas canvas = null;
+                for (RectF area : dirtyAreas) {
+                    if (!area.intersects(tx * tileSize, ty * tileSize,
+                            (tx + 1) * tileSize, (ty + 1) * tileSize)) {
+                        continue;
+                    }
+                    if (tile == null) {
+                        // Never touch a bitmap that may be being drawn
+                        tile = cached.getValue().copy(Bitmap.Config.ALPHA_8, true);
+                        canvas = createTileCanvas(tile, level, tx, ty);
+                    }
+                    mTileBounds.set(area);
+                    mTileBounds.inset(-margin, -margin);
+                    canvas.save();
+                    canvas.clipRect(mTileBounds);
+                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    drawEntries(canvas, mTileBounds);
+                    canvas.restore();
+                }
+                if (tile != null) {
+                    mTiles.put(key, tile);
+                }
+            }
+        }
+    }
+
+    private Canvas createTileCanvas(Bitmap tile, int level, int tx, int ty) {
+        final float scale = 1 << level;
+        final float tileSize = getTileSize(level);
+        Canvas canvas = new Canvas(tile);
+        canvas.scale(scale, scale);
+        canvas.translate(-tx * tileSize, -ty * tileSize);
+        return canvas;
+    }
+
+    private void drawEntries(Canvas canvas, RectF area) {
+        mTileEntries.clear();
+        mIndex.query(area, mTileEntries);
+
+        final ContributorsCloudEntry selected = getSelectedEntry();
+        for (ContributorsCloudEntry entry : mTileEntries) {
+            if (entry != selected) {
+                mTileRenderer.draw(canvas, entry, Color.BLACK);
+            }
+        }
+        mTileEntries.clear();
+    }
+
+    private static int getLevel(float scale) {
+        final int level = (int) Math.round(Math.log(scale) / Math.log(2));
+        return Math.max(0, Math.min(MAX_LEVEL, level));
+    }
+
+    private static int getTileCount(int level) {
+        return (CLOUD_SIZE << level) / TILE_SIZE;
+    }
+
+    private static float getTileSize(int level) {
+        return (float) TILE_SIZE / (1 << level);
+    }
+
+    private static int clampTile(int tile, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    private static Long getTileKey(int level, int tx, int ty) {
+        return ((long) level << 40) | ((long) tx << 20) | ty;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mTilePaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mTilePaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.contributors;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drawable that draws the names of the contributors cloud directly as text on every frame.
+ * <p>
+ * Meant for hardware accelerated views: the zoom and pan of the view's matrix are applied by
+ * the GPU to the recorded text, which is rasterized by the font cache at the final scale, so
+ * the cloud stays sharp at any zoom without keeping any bitmap around. Only the names that
+ * the {@link ContributorsCloudIndex} reports as visible are recorded.
+ */
+class ContributorsCloudVectorDrawable extends ContributorsCloudDrawable {
+
+    // Names are culled by their bounds, keep a margin for the antialiasing
+    private static final float VIEWPORT_MARGIN = 2f;
+
+    private final ContributorsCloudRenderer mRenderer = new ContributorsCloudRenderer();
+    private final List<ContributorsCloudEntry> mVisibleEntries = new ArrayList<>();
+    private final RectF mVisibleArea = new RectF();
+
+    private int mAlpha = 0xff;
+
+    ContributorsCloudVectorDrawable(ContributorsCloudIndex index, int foregroundColor,
+            int selectedColor) {
+        super(index, foregroundColor, selectedColor);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final float scale = getViewport(mVisibleArea);
+        final float margin = VIEWPORT_MARGIN / scale;
+        mVisibleArea.inset(-margin, -margin);
+        mVisibleEntries.clear();
+        mIndex.query(mVisibleArea, mVisibleEntries);
+
+        final int foregroundColor = applyAlpha(mForegroundColor);
+        final ContributorsCloudEntry selected = getSelectedEntry();
+        for (ContributorsCloudEntry entry : mVisibleEntries) {
+            if (entry != selected) {
+                mRenderer.draw(canvas, entry, foregroundColor);
+            }
+        }
+        mVisibleEntries.clear();
+
+        // The selected name is always on top
+        if (selected != null) {
+            mRenderer.draw(canvas, selected, applyAlpha(mSelectedColor));
+        }
+    }
+
+    private int applyAlpha(int color) {
+        return Color.argb(Color.alpha(color) * mAlpha / 0xff,
+                Color.red(color), Color.green(color), Color.blue(color));
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mRenderer.setColorFilter(cf);
+        invalidateSelf();
+    }
+}
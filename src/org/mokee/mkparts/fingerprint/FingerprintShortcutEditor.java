@@ -44,6 +44,8 @@ import mokee.fingerprint.FingerprintShortcutManager.ComponentTarget;
 import mokee.fingerprint.FingerprintShortcutManager.ShortcutTarget;
 
 import org.mokee.mkparts.R;
+import org.mokee.mkparts.utils.AppIconCache;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 
 public class FingerprintShortcutEditor extends Activity {
 
@@ -112,12 +114,35 @@ public class FingerprintShortcutEditor extends Activity {
     }
 
     private void loadActivities() {
+        // Icons may have to be loaded from the packages, build the list in the background
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Item> items = queryItems();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        mItems.clear();
+                        mItems.addAll(items);
+                        mAdapter.notifyDataSetChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    private List<Item> queryItems() {
         final int density = getResources().getDisplayMetrics().densityDpi;
+        final AppIconCache iconCache = AppIconCache.get(this);
+        final List<Item> items = new ArrayList<>();
 
         for (LauncherActivityInfo activity : getActivities()) {
-            mItems.add(new Item(
+            items.add(new Item(
                     new ComponentTarget(activity),
-                    activity.getLabel(), activity.getIcon(density)));
+                    iconCache.getLabel(activity), iconCache.getIcon(activity)));
 
             for (ShortcutInfo shortcut : getShortcuts(activity)) {
                 final CharSequence longLabel = shortcut.getLongLabel();
@@ -129,13 +154,13 @@ public class FingerprintShortcutEditor extends Activity {
                 final Drawable icon = mLauncherApps.getShortcutIconDrawable(
                         shortcut, density);
 
-                mItems.add(new Item(
+                items.add(new Item(
                         new ShortcutTarget(shortcut),
                         label, icon));
             }
         }
 
-        mAdapter.notifyDataSetChanged();
+        return items;
     }
 
     private List<LauncherActivityInfo> getActivities() {
@@ -28,6 +28,7 @@ import android.support.v7.preference.PreferenceScreen;
 
 import com.android.internal.view.RotationPolicy;
 
+import org.mokee.mkparts.CachedSummaryProvider;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
 
@@ -139,9 +140,16 @@ public class DisplayRotation extends SettingsPreferenceFragment {
         return super.onPreferenceTreeClick(preference);
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+    public static final SummaryProvider SUMMARY_PROVIDER = new CachedSummaryProvider() {
         @Override
-        public String getSummary(Context context, String key) {
+        protected Uri[] getTriggerUris() {
+            return new Uri[] {
+                    Settings.System.getUriFor(Settings.System.ACCELEROMETER_ROTATION)
+            };
+        }
+
+        @Override
+        protected String computeSummary(Context context, String key) {
             if (RotationPolicy.isRotationLocked(context)) {
                 return context.getString(R.string.display_rotation_disabled);
             }
@@ -19,6 +19,7 @@ package org.mokee.mkparts.notificationlight;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.Resources;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceGroup;
@@ -28,6 +29,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 
 import org.mokee.internal.notification.LightsCapabilities;
+import org.mokee.mkparts.CachedSummaryProvider;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
 
@@ -267,9 +269,16 @@ public class BatteryLightSettings extends SettingsPreferenceFragment implements
         return true;
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+    public static final SummaryProvider SUMMARY_PROVIDER = new CachedSummaryProvider() {
         @Override
-        public String getSummary(Context context, String key) {
+        protected Uri[] getTriggerUris() {
+            return new Uri[] {
+                    MKSettings.System.getUriFor(MKSettings.System.BATTERY_LIGHT_ENABLED)
+            };
+        }
+
+        @Override
+        protected String computeSummary(Context context, String key) {
             if (MKSettings.System.getInt(context.getContentResolver(),
                     MKSettings.System.BATTERY_LIGHT_ENABLED, 1) == 1) {
                 return context.getString(R.string.enabled);
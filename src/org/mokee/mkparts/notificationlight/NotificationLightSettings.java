@@ -28,6 +28,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.support.v7.preference.Preference;
@@ -46,8 +47,10 @@ import android.widget.ListView;
 import org.mokee.internal.notification.LightsCapabilities;
 import org.mokee.mkparts.widget.PackageListAdapter;
 import org.mokee.mkparts.widget.PackageListAdapter.PackageItem;
+import org.mokee.mkparts.CachedSummaryProvider;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
+import org.mokee.mkparts.utils.AppIconCache;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -82,6 +85,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
     private int mDefaultLedOn;
     private int mDefaultLedOff;
     private PackageManager mPackageManager;
+    private AppIconCache mIconCache;
     private PreferenceGroup mApplicationPrefList;
     private NotificationBrightnessPreference mNotificationBrightnessPref;
     private SystemSettingSwitchPreference mEnabledPref;
@@ -186,6 +190,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
 
         // Get launch-able applications
         mPackageManager = getActivity().getPackageManager();
+        mIconCache = AppIconCache.get(getActivity());
         mPackageAdapter = new PackageListAdapter(getActivity());
 
         mPackages = new HashMap<String, Package>();
@@ -295,13 +300,19 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
                 try {
                     PackageInfo info = mPackageManager.getPackageInfo(pkg.name,
                             PackageManager.GET_META_DATA);
-                    ApplicationLightPreference pref =
+                    final ApplicationLightPreference pref =
                             new ApplicationLightPreference(context, null,
                                     pkg.color, pkg.timeon, pkg.timeoff);
 
                     pref.setKey(pkg.name);
-                    pref.setTitle(info.applicationInfo.loadLabel(mPackageManager));
-                    pref.setIcon(info.applicationInfo.loadIcon(mPackageManager));
+                    pref.setTitle(mIconCache.getLabel(info.applicationInfo));
+                    mIconCache.getIconAsync(info.applicationInfo,
+                            new AppIconCache.IconCallback() {
+                        @Override
+                        public void onIconLoaded(Drawable icon) {
+                            pref.setIcon(icon);
+                        }
+                    });
                     pref.setPersistent(false);
                     pref.setOnPreferenceChangeListener(this);
                     pref.setOnLongClickListener(this);
@@ -330,25 +341,37 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         }
     }
 
-    private int getInitialColorForPackage(String packageName) {
-        boolean autoColor = MKSettings.System.getInt(getActivity().getContentResolver(),
+    private boolean isAutoColor() {
+        return MKSettings.System.getInt(getActivity().getContentResolver(),
                 MKSettings.System.NOTIFICATION_LIGHT_COLOR_AUTO, mMultiColorLed ? 1 : 0) == 1;
-        int color = mDefaultColor;
-        if (autoColor) {
-            try {
-                Drawable icon = mPackageManager.getApplicationIcon(packageName);
-                color = ColorUtils.generateAlertColorFromDrawable(icon);
-            } catch (NameNotFoundException e) {
-                // shouldn't happen, but just return default
-            }
+    }
+
+    private void addCustomApplicationPref(final String packageName) {
+        if (mPackages.containsKey(packageName)) {
+            return;
+        }
+        if (!isAutoColor()) {
+            addCustomApplicationPref(packageName, mDefaultColor);
+            return;
         }
-        return color;
+        // The color comes from the icon, which may have to be loaded from the package
+        mIconCache.getIconAsync(packageName, new AppIconCache.IconCallback() {
+            @Override
+            public void onIconLoaded(Drawable icon) {
+                if (getActivity() == null) {
+                    return;
+                }
+                // shouldn't be missing, but just use the default
+                int color = icon != null
+                        ? ColorUtils.generateAlertColorFromDrawable(icon) : mDefaultColor;
+                addCustomApplicationPref(packageName, color);
+            }
+        });
     }
 
-    private void addCustomApplicationPref(String packageName) {
+    private void addCustomApplicationPref(String packageName, int color) {
         Package pkg = mPackages.get(packageName);
         if (pkg == null) {
-            int color = getInitialColorForPackage(packageName);
             pkg = new Package(packageName, color, mDefaultLedOn, mDefaultLedOff);
             mPackages.put(packageName, pkg);
             savePackageList(false);
@@ -604,9 +627,17 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
 
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+    public static final SummaryProvider SUMMARY_PROVIDER = new CachedSummaryProvider() {
+        @Override
+        protected Uri[] getTriggerUris() {
+            return new Uri[] {
+                    Settings.System.getUriFor(Settings.System.NOTIFICATION_LIGHT_PULSE),
+                    MKSettings.System.getUriFor(MKSettings.System.NOTIFICATION_LIGHT_COLOR_AUTO)
+            };
+        }
+
         @Override
-        public String getSummary(Context context, String key) {
+        protected String computeSummary(Context context, String key) {
             if (Settings.System.getInt(context.getContentResolver(),
                     Settings.System.NOTIFICATION_LIGHT_PULSE, 1) == 1) {
                 if (MKSettings.System.getInt(context.getContentResolver(),
@@ -37,6 +37,7 @@ import android.util.TypedValue;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.Toast;
 
+import org.mokee.mkparts.CachedSummaryProvider;
 import org.mokee.mkparts.PartsUpdater;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.widget.SeekBarPreference;
@@ -273,9 +274,23 @@ public class PerfProfileSettings extends SettingsPreferenceFragment
                 : R.string.auto_power_save_summary_on);
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+    public static final SummaryProvider SUMMARY_PROVIDER = new CachedSummaryProvider() {
         @Override
-        public String getSummary(Context context, String key) {
+        protected Uri[] getTriggerUris() {
+            return new Uri[] {
+                    MKSettings.Secure.getUriFor(MKSettings.Secure.PERFORMANCE_PROFILE)
+            };
+        }
+
+        @Override
+        protected IntentFilter[] getTriggerFilters() {
+            return new IntentFilter[] {
+                    new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED)
+            };
+        }
+
+        @Override
+        protected String computeSummary(Context context, String key) {
             final PowerManager powerManager =
                     (PowerManager) context.getSystemService(Context.POWER_SERVICE);
             final PerformanceManager perfManager = PerformanceManager.getInstance(context);
@@ -19,9 +19,6 @@ package org.mokee.mkparts.privacyguard;
 import android.app.AppOpsManager;
 import android.content.AsyncTaskLoader;
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PackageInfo;
 
 import org.mokee.mkparts.privacyguard.PrivacyGuardManager.AppInfo;
 
@@ -34,7 +31,6 @@ import java.util.List;
  * An asynchronous loader implementation that loads AppInfo structures.
  */
 /* package */ class AppInfoLoader extends AsyncTaskLoader<List<AppInfo>> {
-    private PackageManager mPm;
     private boolean mShowSystemApps;
     private AppOpsManager mAppOps;
     private static final String[] BLACKLISTED_PACKAGES = {
@@ -43,7 +39,6 @@ import java.util.List;
 
     public AppInfoLoader(Context context, boolean showSystemApps) {
         super(context);
-        mPm = context.getPackageManager();
         mAppOps = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
         mShowSystemApps = showSystemApps;
     }
@@ -78,33 +73,30 @@ import java.util.List;
     }
 
     /**
-    * Uses the package manager to query for all currently installed apps
-    * for the list.
+    * Uses the snapshot of the installed apps to build the list.
     *
     * @return the complete List off installed applications (@code PrivacyGuardAppInfo)
     */
     private List<AppInfo> loadInstalledApps() {
         List<AppInfo> apps = new ArrayList<AppInfo>();
-        List<PackageInfo> packages = mPm.getInstalledPackages(
-            PackageManager.GET_PERMISSIONS | PackageManager.GET_SIGNATURES);
-
-        for (PackageInfo info : packages) {
-            final ApplicationInfo appInfo = info.applicationInfo;
+        List<AppInfoSnapshot.Entry> entries = AppInfoSnapshot.get(getContext())
+                .update(getContext());
+        PrivacyGuardStates states = PrivacyGuardStates.query(mAppOps);
 
+        for (AppInfoSnapshot.Entry entry : entries) {
             // skip all system apps if they shall not be included
-            if ((!mShowSystemApps && (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)
-                    || (appInfo.uid == android.os.Process.SYSTEM_UID)
-                    || isBlacklisted(appInfo.packageName)) {
+            if ((!mShowSystemApps && entry.system)
+                    || (entry.uid == android.os.Process.SYSTEM_UID)
+                    || isBlacklisted(entry.packageName)) {
                 continue;
             }
 
             AppInfo app = new AppInfo();
-            app.title = appInfo.loadLabel(mPm).toString();
-            app.packageName = info.packageName;
-            app.enabled = appInfo.enabled;
-            app.uid = info.applicationInfo.uid;
-            app.privacyGuardEnabled = mAppOps.getPrivacyGuardSettingForPackage(
-                    app.uid, app.packageName);
+            app.title = entry.title;
+            app.packageName = entry.packageName;
+            app.enabled = entry.enabled;
+            app.uid = entry.uid;
+            app.privacyGuardEnabled = states.isEnabled(app.uid, app.packageName);
             apps.add(app);
         }
 
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.privacyguard;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.provider.Settings;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Persisted list of the installed applications shown by the privacy guard manager.
+ *
+ * The whole list is only queried when there is no usable snapshot: on first use, after
+ * a reboot or a locale change. Otherwise only the packages changed since the last update,
+ * as reported by the package manager, are queried again.
+ */
+/* package */ class AppInfoSnapshot {
+
+    private static final String TAG = "AppInfoSnapshot";
+
+    private static final String SNAPSHOT_FILE = "privacy_guard_apps";
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static AppInfoSnapshot sInstance;
+
+    /* package */ static final class Entry {
+        String packageName;
+        String title;
+        int uid;
+        boolean enabled;
+        boolean system;
+    }
+
+    private final PackageManager mPm;
+    private final AtomicFile mFile;
+
+    private final ArrayMap<String, Entry> mEntries = new ArrayMap<>();
+    private int mBootCount = -1;
+    private int mSequenceNumber;
+    private String mLocale;
+    private boolean mLoaded;
+
+    private AppInfoSnapshot(Context context) {
+        mPm = context.getPackageManager();
+        mFile = new AtomicFile(new File(context.getFilesDir(), SNAPSHOT_FILE));
+    }
+
+    public static synchronized AppInfoSnapshot get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppInfoSnapshot(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Brings the snapshot up to date and returns its entries.
+     */
+    public synchronized List<Entry> update(Context context) {
+        if (!mLoaded) {
+            readLocked();
+            mLoaded = true;
+        }
+
+        final int bootCount = Settings.Global.getInt(context.getContentResolver(),
+                Settings.Global.BOOT_COUNT, -1);
+        final String locale = Locale.getDefault().toLanguageTag();
+        ChangedPackages changes = null;
+        // Without a boot count, a sequence number of another boot can't be told apart
+        if (bootCount != -1 && bootCount == mBootCount && locale.equals(mLocale)) {
+            changes = mPm.getChangedPackages(mSequenceNumber);
+            if (changes == null) {
+                return new ArrayList<>(mEntries.values());
+            }
+            for (String packageName : changes.getPackageNames()) {
+                updatePackageLocked(packageName);
+            }
+            mSequenceNumber = changes.getSequenceNumber();
+        } else {
+            // Take the sequence number first, so that nothing changing meanwhile is missed
+            changes = mPm.getChangedPackages(0);
+            mSequenceNumber = changes != null ? changes.getSequenceNumber() : 0;
+            mEntries.clear();
+            for (ApplicationInfo appInfo : mPm.getInstalledApplications(0)) {
+                putLocked(appInfo);
+            }
+            mBootCount = bootCount;
+            mLocale = locale;
+        }
+
+        writeLocked();
+        return new ArrayList<>(mEntries.values());
+    }
+
+    private void updatePackageLocked(String packageName) {
+        try {
+            putLocked(mPm.getApplicationInfo(packageName, 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            mEntries.remove(packageName);
+        }
+    }
+
+    private void putLocked(ApplicationInfo appInfo) {
+        Entry entry = new Entry();
+        entry.packageName = appInfo.packageName;
+        entry.title = appInfo.loadLabel(mPm).toString();
+        entry.uid = appInfo.uid;
+        entry.enabled = appInfo.enabled;
+        entry.system = (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+        mEntries.put(entry.packageName, entry);
+    }
+
+    private void readLocked() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(mFile.openRead()))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return;
+            }
+            final int bootCount = in.readInt();
+            final int sequenceNumber = in.readInt();
+            final String locale = in.readUTF();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                entry.packageName = in.readUTF();
+                entry.title = in.readUTF();
+                entry.uid = in.readInt();
+                entry.enabled = in.readBoolean();
+                entry.system = in.readBoolean();
+                mEntries.put(entry.packageName, entry);
+            }
+            mBootCount = bootCount;
+            mSequenceNumber = sequenceNumber;
+            mLocale = locale;
+        } catch (FileNotFoundException e) {
+            // No snapshot yet
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read snapshot", e);
+            mEntries.clear();
+        }
+    }
+
+    private void writeLocked() {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(mBootCount);
+            out.writeInt(mSequenceNumber);
+            out.writeUTF(mLocale);
+            out.writeInt(mEntries.size());
+            for (Entry entry : mEntries.values()) {
+                out.writeUTF(entry.packageName);
+                out.writeUTF(entry.title);
+                out.writeInt(entry.uid);
+                out.writeBoolean(entry.enabled);
+                out.writeBoolean(entry.system);
+            }
+            out.flush();
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write snapshot", e);
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+}
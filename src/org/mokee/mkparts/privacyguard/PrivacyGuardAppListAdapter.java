@@ -19,9 +19,6 @@
 package org.mokee.mkparts.privacyguard;
 
 import android.content.Context;
-import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -32,21 +29,22 @@ import android.widget.TextView;
 
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.privacyguard.PrivacyGuardManager.AppInfo;
+import org.mokee.mkparts.widget.AppIconLoader;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIndexer {
 
+    // icons of the rows around the bound one, loaded ahead of scrolling
+    private static final int PREFETCH_ROWS = 3;
+
     private LayoutInflater mInflater;
-    private PackageManager mPm;
+    private AppIconLoader mIconLoader;
 
     private List<AppInfo> mApps;
     private String[] mSections;
     private int[] mPositions;
-    private ConcurrentHashMap<String, Drawable> mIcons;
-    private Drawable mDefaultImg;
 
     private Context mContext;
 
@@ -55,7 +53,6 @@ public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIn
             List<String> sections, List<Integer> positions) {
         mContext = context;
         mInflater = LayoutInflater.from(mContext);
-        mPm = context.getPackageManager();
 
         mApps = apps;
         mSections = sections.toArray(new String[sections.size()]);
@@ -64,11 +61,16 @@ public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIn
             mPositions[i] = positions.get(i);
         }
 
-        // set the default icon till the actual app icon is loaded in async task
-        mDefaultImg = mContext.getResources().getDrawable(android.R.mipmap.sym_def_app_icon);
-        mIcons = new ConcurrentHashMap<String, Drawable>();
+        // set the default icon till the actual app icon is loaded in background
+        mIconLoader = new AppIconLoader(mContext,
+                mContext.getResources().getDrawable(android.R.mipmap.sym_def_app_icon));
+    }
 
-        new LoadIconsTask().execute(apps.toArray(new PrivacyGuardManager.AppInfo[]{}));
+    /**
+     * Stops loading icons, once the adapter is replaced.
+     */
+    public void release() {
+        mIconLoader.release();
     }
 
     @Override
@@ -107,8 +109,15 @@ public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIn
 
         appHolder.title.setText(app.title);
 
-        Drawable icon = mIcons.get(app.packageName);
-        appHolder.icon.setImageDrawable(icon != null ? icon : mDefaultImg);
+        mIconLoader.loadIcon(appHolder.icon, app.packageName);
+        for (int i = 1; i <= PREFETCH_ROWS; i++) {
+            if (position + i < mApps.size()) {
+                mIconLoader.prefetch(mApps.get(position + i).packageName);
+            }
+            if (position - i >= 0) {
+                mIconLoader.prefetch(mApps.get(position - i).packageName);
+            }
+        }
 
         int privacyGuardDrawableResId = app.privacyGuardEnabled
                 ? R.drawable.ic_privacy_guard_on :
@@ -151,31 +160,6 @@ public class PrivacyGuardAppListAdapter extends BaseAdapter implements SectionIn
         return mSections;
     }
 
-    /**
-     * An asynchronous task to load the icons of the installed applications.
-     */
-    private class LoadIconsTask extends AsyncTask<PrivacyGuardManager.AppInfo, Void, Void> {
-        @Override
-        protected Void doInBackground(PrivacyGuardManager.AppInfo... apps) {
-            for (PrivacyGuardManager.AppInfo app : apps) {
-                try {
-                    Drawable icon = mPm.getApplicationIcon(app.packageName);
-                    mIcons.put(app.packageName, icon);
-                    publishProgress();
-                } catch (PackageManager.NameNotFoundException e) {
-                    // ignored; app will show up with default image
-                }
-            }
-
-            return null;
-        }
-
-        @Override
-        protected void onProgressUpdate(Void... progress) {
-            notifyDataSetChanged();
-        }
-    }
-
     /**
      * App view holder used to reuse the views inside the list.
      */
@@ -28,9 +28,11 @@ import android.app.Dialog;
 import android.app.DialogFragment;
 import android.app.Fragment;
 import android.app.LoaderManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -158,13 +160,12 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
     @Override
     public void onPause() {
         super.onPause();
+        mActivity.unregisterReceiver(mPackageReceiver);
 
         // Remember where the list is scrolled to so we can restore the scroll position
         // when we come back to this activity and *after* we complete querying for the
         // conversations.
-        mSavedFirstVisiblePosition = mAppsList.getFirstVisiblePosition();
-        View firstChild = mAppsList.getChildAt(0);
-        mSavedFirstItemOffset = (firstChild == null) ? 0 : firstChild.getTop();
+        saveListPosition();
     }
 
     @Override
@@ -173,29 +174,69 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
 
         // rebuild the list; the user might have changed settings inbetween
         scheduleAppsLoad();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        mActivity.registerReceiver(mPackageReceiver, filter);
     }
 
     @Override
-    public Loader<List<AppInfo>> onCreateLoader(int id, Bundle args) {
-        mLoadingContainer.startAnimation(AnimationUtils.loadAnimation(
-              mActivity, android.R.anim.fade_in));
-        mAppsList.startAnimation(AnimationUtils.loadAnimation(
-              mActivity, android.R.anim.fade_out));
+    public void onDestroyView() {
+        super.onDestroyView();
 
-        mAppsList.setVisibility(View.INVISIBLE);
-        mLoadingContainer.setVisibility(View.VISIBLE);
+        // The list goes away with the view, a new view builds a new adapter
+        if (mAdapter != null) {
+            mAdapter.release();
+            mAdapter = null;
+        }
+    }
+
+    private void saveListPosition() {
+        mSavedFirstVisiblePosition = mAppsList.getFirstVisiblePosition();
+        View firstChild = mAppsList.getChildAt(0);
+        mSavedFirstItemOffset = (firstChild == null) ? 0 : firstChild.getTop();
+    }
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // the loader only queries the packages which changed
+            saveListPosition();
+            scheduleAppsLoad();
+        }
+    };
+
+    @Override
+    public Loader<List<AppInfo>> onCreateLoader(int id, Bundle args) {
+        // keep showing the current list while it is refreshed
+        if (mApps == null) {
+            mLoadingContainer.startAnimation(AnimationUtils.loadAnimation(
+                  mActivity, android.R.anim.fade_in));
+            mAppsList.startAnimation(AnimationUtils.loadAnimation(
+                  mActivity, android.R.anim.fade_out));
+
+            mAppsList.setVisibility(View.INVISIBLE);
+            mLoadingContainer.setVisibility(View.VISIBLE);
+        }
         return new AppInfoLoader(mActivity, shouldShowSystemApps());
     }
 
     @Override
     public void onLoadFinished(Loader<List<AppInfo>> loader, List<AppInfo> apps) {
+        final boolean wasLoading = mLoadingContainer.getVisibility() == View.VISIBLE;
         mApps = apps;
         prepareAppAdapter();
 
-        mLoadingContainer.startAnimation(AnimationUtils.loadAnimation(
-              mActivity, android.R.anim.fade_out));
-        mAppsList.startAnimation(AnimationUtils.loadAnimation(
-              mActivity, android.R.anim.fade_in));
+        if (wasLoading) {
+            mLoadingContainer.startAnimation(AnimationUtils.loadAnimation(
+                  mActivity, android.R.anim.fade_out));
+            mAppsList.startAnimation(AnimationUtils.loadAnimation(
+                  mActivity, android.R.anim.fade_in));
+        }
 
         if (mSavedFirstVisiblePosition != AdapterView.INVALID_POSITION) {
             mAppsList.setSelectionFromTop(mSavedFirstVisiblePosition, mSavedFirstItemOffset);
@@ -215,6 +256,10 @@ public class PrivacyGuardManager extends SettingsPreferenceFragment
     }
 
     private void prepareAppAdapter() {
+        if (mAdapter != null) {
+            mAdapter.release();
+            mAdapter = null;
+        }
         // if app list is empty inform the user
         // else go ahead and construct the list
         if (mApps == null || mApps.isEmpty()) {
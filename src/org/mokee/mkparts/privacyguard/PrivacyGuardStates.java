@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.privacyguard;
+
+import android.app.AppOpsManager;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * The privacy guard state of all packages, read with a single app ops query.
+ *
+ * A package is guarded if any of the guarded ops is neither allowed nor ignored, the
+ * same rule as {@link AppOpsManager#getPrivacyGuardSettingForPackage}. Ops without an
+ * entry for a package are in their default mode.
+ *
+ * Unlike the per package check, modes set on a whole uid with
+ * {@link AppOpsManager#setUidMode} are not seen, the bulk query only returns package modes.
+ * Privacy guard only sets package modes, so the two differ only for ops another component
+ * set for a uid. With debug logging enabled for {@link #TAG}, each answer is compared
+ * with the per package check and a difference is logged.
+ */
+/* package */ class PrivacyGuardStates {
+
+    private static final String TAG = "PrivacyGuardStates";
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    // Mirrors the privacy guard ops of AppOpsManager
+    private static final int[] PRIVACY_GUARD_OPS = new int[] {
+            AppOpsManager.OP_COARSE_LOCATION,
+            AppOpsManager.OP_READ_CALL_LOG,
+            AppOpsManager.OP_READ_CONTACTS,
+            AppOpsManager.OP_READ_CALENDAR,
+            AppOpsManager.OP_READ_SMS
+    };
+
+    // Bits of the ops having an entry, and of those in a guarded mode, keyed by uid and package
+    private final ArrayMap<String, long[]> mOpModes = new ArrayMap<>();
+    private long mDefaultGuardedOps;
+    private final AppOpsManager mAppOps;
+
+    private PrivacyGuardStates(AppOpsManager appOps) {
+        mAppOps = appOps;
+    }
+
+    public static PrivacyGuardStates query(AppOpsManager appOps) {
+        final PrivacyGuardStates states = new PrivacyGuardStates(appOps);
+        final int[] ops = new int[PRIVACY_GUARD_OPS.length];
+        for (int i = 0; i < PRIVACY_GUARD_OPS.length; i++) {
+            ops[i] = AppOpsManager.opToSwitch(PRIVACY_GUARD_OPS[i]);
+            if (isGuarded(AppOpsManager.opToDefaultMode(ops[i]))) {
+                states.mDefaultGuardedOps |= 1L << i;
+            }
+        }
+
+        final List<AppOpsManager.PackageOps> packages = appOps.getPackagesForOps(ops);
+        if (packages == null) {
+            return states;
+        }
+        for (AppOpsManager.PackageOps pkg : packages) {
+            final long[] modes = new long[2];
+            for (AppOpsManager.OpEntry entry : pkg.getOps()) {
+                for (int i = 0; i < ops.length; i++) {
+                    if (ops[i] != entry.getOp()) continue;
+                    modes[0] |= 1L << i;
+                    if (isGuarded(entry.getMode())) {
+                        modes[1] |= 1L << i;
+                    }
+                }
+            }
+            states.mOpModes.put(getKey(pkg.getUid(), pkg.getPackageName()), modes);
+        }
+        return states;
+    }
+
+    public boolean isEnabled(int uid, String packageName) {
+        final long[] modes = mOpModes.get(getKey(uid, packageName));
+        final boolean enabled = modes == null ? mDefaultGuardedOps != 0
+                : modes[1] != 0 || (mDefaultGuardedOps & ~modes[0]) != 0;
+        if (DEBUG && enabled != mAppOps.getPrivacyGuardSettingForPackage(uid, packageName)) {
+            Log.w(TAG, "State of " + packageName + " (uid " + uid + ") differs from the"
+                    + " per package check, a uid mode may be set");
+        }
+        return enabled;
+    }
+
+    private static boolean isGuarded(int mode) {
+        return mode != AppOpsManager.MODE_ALLOWED && mode != AppOpsManager.MODE_IGNORED;
+    }
+
+    private static String getKey(int uid, String packageName) {
+        return uid + ":" + packageName;
+    }
+}
@@ -47,6 +47,7 @@ import org.mokee.mkparts.widget.PackageListAdapter;
 import org.mokee.mkparts.widget.PackageListAdapter.PackageItem;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
+import org.mokee.mkparts.utils.AppIconCache;
 
 import mokee.app.ProfileManager;
 
@@ -66,6 +67,7 @@ public class AppGroupConfig extends SettingsPreferenceFragment
     private ListView mListView;
 
     private PackageManager mPackageManager;
+    private AppIconCache mIconCache;
 
     private NotificationGroup mNotificationGroup;
 
@@ -94,6 +96,7 @@ public class AppGroupConfig extends SettingsPreferenceFragment
         if (args != null) {
             mNotificationGroup = (NotificationGroup) args.getParcelable("NotificationGroup");
             mPackageManager = getPackageManager();
+            mIconCache = AppIconCache.get(getActivity());
             mAppAdapter = new PackageListAdapter(getActivity());
 
             updatePackages();
@@ -157,13 +160,18 @@ public class AppGroupConfig extends SettingsPreferenceFragment
         if (applicationsList != null) {
             applicationsList.removeAll();
             for (String pkg : mNotificationGroup.getPackages()) {
-                Preference pref = new Preference(getActivity());
+                final Preference pref = new Preference(getActivity());
                 try {
                     PackageInfo group = mPackageManager.getPackageInfo(pkg, 0);
                     pref.setKey(group.packageName);
-                    pref.setTitle(group.applicationInfo.loadLabel(mPackageManager));
-                    Drawable icon = group.applicationInfo.loadIcon(mPackageManager);
-                    pref.setIcon(icon);
+                    pref.setTitle(mIconCache.getLabel(group.applicationInfo));
+                    mIconCache.getIconAsync(group.applicationInfo,
+                            new AppIconCache.IconCallback() {
+                        @Override
+                        public void onIconLoaded(Drawable icon) {
+                            pref.setIcon(icon);
+                        }
+                    });
                     pref.setSelectable(true);
                     pref.setPersistent(false);
                     applicationsList.addPreference(pref);
@@ -25,6 +25,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceScreen;
@@ -39,6 +40,7 @@ import android.widget.FrameLayout;
 import android.widget.TextView;
 
 import org.mokee.mkparts.widget.MKBaseSystemSettingSwitchBar;
+import org.mokee.mkparts.CachedSummaryProvider;
 import org.mokee.mkparts.PartsActivity;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
@@ -304,9 +306,25 @@ public class ProfilesSettings extends SettingsPreferenceFragment
         }
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+    public static final SummaryProvider SUMMARY_PROVIDER = new CachedSummaryProvider() {
         @Override
-        public String getSummary(Context context, String key) {
+        protected Uri[] getTriggerUris() {
+            return new Uri[] {
+                    MKSettings.System.getUriFor(MKSettings.System.SYSTEM_PROFILES_ENABLED)
+            };
+        }
+
+        @Override
+        protected IntentFilter[] getTriggerFilters() {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(ProfileManager.PROFILES_STATE_CHANGED_ACTION);
+            filter.addAction(ProfileManager.INTENT_ACTION_PROFILE_SELECTED);
+            filter.addAction(ProfileManager.INTENT_ACTION_PROFILE_UPDATED);
+            return new IntentFilter[] { filter };
+        }
+
+        @Override
+        protected String computeSummary(Context context, String key) {
             ProfileManager pm = ProfileManager.getInstance(context);
             if (!pm.isProfilesEnabled()) {
                 return context.getString(R.string.profile_settings_summary_off);
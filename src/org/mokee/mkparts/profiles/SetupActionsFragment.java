@@ -86,6 +86,7 @@ import org.mokee.mkparts.profiles.actions.item.ProfileNameItem;
 import org.mokee.mkparts.profiles.actions.item.RingModeItem;
 import org.mokee.mkparts.profiles.actions.item.TriggerItem;
 import org.mokee.mkparts.profiles.actions.item.VolumeStreamItem;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 import org.mokee.mkparts.utils.DeviceUtils;
 
 import java.util.ArrayList;
@@ -413,7 +414,7 @@ public class SetupActionsFragment extends SettingsPreferenceFragment
                 super.onPostExecute(aVoid);
                 rebuildItemList();
             }
-        }.execute((Void) null);
+        }.executeOnExecutor(BackgroundExecutor.get(), (Void) null);
     }
 
     public static void fillProfileWithCurrentSettings(Context context, Profile profile) {
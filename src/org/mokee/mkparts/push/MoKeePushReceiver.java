@@ -32,10 +32,6 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.mokee.os.Build;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.mokee.mkparts.R;
 
 import cn.jpush.android.api.JPushInterface;
@@ -45,24 +41,31 @@ public class MoKeePushReceiver extends BroadcastReceiver {
 
     public static final String TAG = MoKeePushReceiver.class.getSimpleName();
 
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
     public static final String MKPUSH_ALIAS = "pref_alias";
     public static final String MKPUSH_TAGS = "pref_tags";
 
-    public static final int MSG_SET_ALIAS = 1001;
-    public static final int MSG_SET_TAGS = 1002;
-
     private static final String PUSH_NOTIFICATION_CHANNEL = "push_notification_channel";
     private static final String COPY_TO_CLIPBOARD_ACTION = "copy_to_clipboard_action";
 
+    // Tagged apart from the messages, which use the hash of their id
+    private static final String PUSH_SUMMARY_NOTIFICATION_TAG = "push_summary";
+    private static final int PUSH_SUMMARY_NOTIFICATION_ID = 0;
+
+    private static boolean sChannelCreated;
+
     @Override
     public void onReceive(Context ctx, Intent intent) {
+        PushInitializer.initAsync(ctx);
         Bundle bundle = intent.getExtras();
-        Log.d(TAG, "[MyReceiver] onReceive - " + intent.getAction() + ", extras: " + printBundle(bundle));
+        if (DEBUG) Log.d(TAG, "[MyReceiver] onReceive - " + intent.getAction() + ", extras: " + printBundle(bundle));
         if (JPushInterface.ACTION_MESSAGE_RECEIVED.equals(intent.getAction())) {
             String message = bundle.getString(JPushInterface.EXTRA_MESSAGE);
             String customContentString = bundle.getString(JPushInterface.EXTRA_EXTRA);
-            onMessage(ctx, message, customContentString);
-            JPushInterface.reportNotificationOpened(ctx, bundle.getString(JPushInterface.EXTRA_MSG_ID));
+            String msgId = bundle.getString(JPushInterface.EXTRA_MSG_ID);
+            onMessage(ctx, msgId, message, customContentString);
+            JPushInterface.reportNotificationOpened(ctx, msgId);
         } else if (COPY_TO_CLIPBOARD_ACTION.equals(intent.getAction())) {
             ClipboardManager clipboardManager = (ClipboardManager) ctx.getSystemService(Context.CLIPBOARD_SERVICE);
             clipboardManager.setPrimaryClip(ClipData.newPlainText(null, intent.getStringExtra(PushingUtils.KEY_CLIPBOARD)));
@@ -70,40 +73,17 @@ public class MoKeePushReceiver extends BroadcastReceiver {
         }
     }
 
-    public void onMessage(Context ctx, String message, String customContentString) {
+    public void onMessage(Context ctx, String msgId, String message, String customContentString) {
         if (TextUtils.isEmpty(customContentString) || !MoKeeUtils.isSupportLanguage(true)
                 || MKSettings.System.getInt(ctx.getContentResolver(), MKSettings.System.RECEIVE_PUSH_NOTIFICATIONS, 1) != 1)
             return;
-        try {
-            JSONObject customJson = new JSONObject(customContentString);
-
-            String title = PushingUtils.getStringFromJson(PushingUtils.KEY_TITLE, customJson);
-            if (TextUtils.isEmpty(title)) return;
-
-            String device = PushingUtils.getStringFromJson(PushingUtils.KEY_DEVICE, customJson, "all");
-            String type = PushingUtils.getStringFromJson(PushingUtils.KEY_TYPE, customJson, "all");
-            String url = PushingUtils.getStringFromJson(PushingUtils.KEY_URL, customJson);
-            String clipboard = PushingUtils.getStringFromJson(PushingUtils.KEY_CLIPBOARD, customJson);
-
-            if (PushingUtils.verifyPush(device, Build.PRODUCT) && PushingUtils.verifyPush(type, Build.RELEASE_TYPE)
-                    || device.equals("all") && type.equals("all")
-                    || PushingUtils.verifyPush(type, Build.RELEASE_TYPE) && device.equals("all")
-                    || PushingUtils.verifyPush(device, Build.PRODUCT) && type.equals("all")) {
-                promptUser(ctx, url, title, message, clipboard);
-            }
-        } catch (JSONException e1) {
-            e1.printStackTrace();
-        }
+        PushMessage pushMessage = PushMessage.parse(customContentString);
+        if (pushMessage == null) return;
+        promptUser(ctx, msgId, pushMessage.url, pushMessage.title, message, pushMessage.clipboard);
     }
 
-    private void promptUser(Context context, String url, String title, String message, String clipboard) {
+    private void promptUser(Context context, String msgId, String url, String title, String message, String clipboard) {
         NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        NotificationChannel notificationChannel = new NotificationChannel(
-                PUSH_NOTIFICATION_CHANNEL,
-                context.getString(R.string.push_notification),
-                NotificationManager.IMPORTANCE_HIGH
-        );
-
         NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context, PUSH_NOTIFICATION_CHANNEL);
         notificationBuilder.setSmallIcon(R.drawable.ic_push_notify);
 
@@ -114,6 +94,9 @@ public class MoKeePushReceiver extends BroadcastReceiver {
             if (TextUtils.isEmpty(url)) return;
             pendingIntent = openURLIntent(context, url);
         }
+        // Campaigns may be delivered more than once
+        final PushHistory history = PushHistory.get(context);
+        if (!TextUtils.isEmpty(msgId) && history.isSeen(msgId)) return;
         notificationBuilder.setContentIntent(pendingIntent);
         notificationBuilder.setTicker(title);
         notificationBuilder.setContentTitle(title);
@@ -125,8 +108,43 @@ public class MoKeePushReceiver extends BroadcastReceiver {
         notificationStyle.bigText(message);
         notificationBuilder.setStyle(notificationStyle);
 
+        createNotificationChannel(context, notificationManager);
+
+        // Collapse bursts into a single summary
+        int collapsed = history.acquire(PUSH_NOTIFICATION_CHANNEL);
+        if (collapsed > 0) {
+            // Stands for all the collapsed messages, so it doesn't show or open any of them.
+            // They aren't marked as seen, a redelivery may show them later
+            NotificationCompat.Builder summaryBuilder = new NotificationCompat.Builder(context, PUSH_NOTIFICATION_CHANNEL);
+            summaryBuilder.setSmallIcon(R.drawable.ic_push_notify);
+            summaryBuilder.setContentTitle(context.getString(R.string.push_notification));
+            summaryBuilder.setContentText(context.getResources().getQuantityString(
+                    R.plurals.push_notification_collapsed, collapsed, collapsed));
+            summaryBuilder.setAutoCancel(true);
+            summaryBuilder.setShowWhen(false);
+            summaryBuilder.setOnlyAlertOnce(true);
+            summaryBuilder.setColor(context.getColor(com.android.internal.R.color.system_notification_accent_color));
+            notificationManager.notify(PUSH_SUMMARY_NOTIFICATION_TAG, PUSH_SUMMARY_NOTIFICATION_ID,
+                    summaryBuilder.build());
+            return;
+        }
+
+        if (!TextUtils.isEmpty(msgId)) history.markSeen(msgId);
+
+        int id = TextUtils.isEmpty(msgId) ? (int) (System.currentTimeMillis() / 1000) : msgId.hashCode();
+        notificationManager.notify(id, notificationBuilder.build());
+    }
+
+    private static synchronized void createNotificationChannel(Context context,
+            NotificationManager notificationManager) {
+        if (sChannelCreated) return;
+        NotificationChannel notificationChannel = new NotificationChannel(
+                PUSH_NOTIFICATION_CHANNEL,
+                context.getString(R.string.push_notification),
+                NotificationManager.IMPORTANCE_HIGH
+        );
         notificationManager.createNotificationChannel(notificationChannel);
-        notificationManager.notify((int) (System.currentTimeMillis() / 1000), notificationBuilder.build());
+        sChannelCreated = true;
     }
 
     private PendingIntent openURLIntent(Context context, String url) {
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.push;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the push messages already shown and how many were shown recently.
+ *
+ * Message ids are kept for {@link #SEEN_TTL}, and at most {@link #MAX_SEEN} of them,
+ * so that redelivered messages are shown once. Each channel may show
+ * {@link #RATE_LIMIT} notifications per {@link #RATE_WINDOW}; the ones above that
+ * are collapsed into a single summary.
+ */
+public class PushHistory {
+
+    private static final String PUSH_HISTORY_PREF = "mokee_push_history";
+
+    private static final String PREFIX_SEEN = "seen_";
+    private static final String PREFIX_WINDOW_START = "window_start_";
+    private static final String PREFIX_WINDOW_COUNT = "window_count_";
+
+    private static final long SEEN_TTL = 7L * 24L * 60L * 60L * 1000L;
+    private static final int MAX_SEEN = 100;
+
+    private static final long RATE_WINDOW = 10L * 60L * 1000L;
+    private static final int RATE_LIMIT = 3;
+
+    private static PushHistory sInstance;
+
+    private final SharedPreferences mPrefs;
+
+    // Keys of the seen messages and when they were shown, oldest first
+    private LinkedHashMap<String, Long> mSeen;
+
+    private PushHistory(Context context) {
+        mPrefs = context.getSharedPreferences(PUSH_HISTORY_PREF, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized PushHistory get(Context context) {
+        if (sInstance == null) {
+            sInstance = new PushHistory(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return whether the message was already shown
+     */
+    public synchronized boolean isSeen(String msgId) {
+        final long seen = mPrefs.getLong(PREFIX_SEEN + msgId, 0);
+        return seen != 0 && System.currentTimeMillis() - seen < SEEN_TTL;
+    }
+
+    /**
+     * Records a message as shown.
+     *
+     * @return false if the message was already shown
+     */
+    public synchronized boolean markSeen(String msgId) {
+        if (isSeen(msgId)) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        final String key = PREFIX_SEEN + msgId;
+
+        if (mSeen == null) {
+            mSeen = readSeenLocked();
+        }
+        final SharedPreferences.Editor editor = mPrefs.edit();
+        mSeen.remove(key);
+        final Iterator<Map.Entry<String, Long>> it = mSeen.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Long> entry = it.next();
+            final long time = entry.getValue();
+            if (mSeen.size() < MAX_SEEN && now - time < SEEN_TTL && time <= now) {
+                break;
+            }
+            editor.remove(entry.getKey());
+            it.remove();
+        }
+        mSeen.put(key, now);
+        editor.putLong(key, now).apply();
+        return true;
+    }
+
+    private LinkedHashMap<String, Long> readSeenLocked() {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            if (entry.getKey().startsWith(PREFIX_SEEN)) {
+                entries.add(new AbstractMap.SimpleEntry<>(entry.getKey(),
+                        (Long) entry.getValue()));
+            }
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+                return Long.compare(lhs.getValue(), rhs.getValue());
+            }
+        });
+        final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            seen.put(entry.getKey(), entry.getValue());
+        }
+        return seen;
+    }
+
+    /**
+     * Counts a notification against the rate limit of its channel.
+     *
+     * @return 0 if the notification may be shown, otherwise the number of notifications
+     * over the limit in the current window, this one included
+     */
+    public synchronized int acquire(String channel) {
+        final long now = System.currentTimeMillis();
+        final String startKey = PREFIX_WINDOW_START + channel;
+        final String countKey = PREFIX_WINDOW_COUNT + channel;
+
+        long start = mPrefs.getLong(startKey, 0);
+        int count = mPrefs.getInt(countKey, 0);
+        if (now - start >= RATE_WINDOW || start > now) {
+            start = now;
+            count = 0;
+        }
+        count++;
+        mPrefs.edit().putLong(startKey, start).putInt(countKey, count).apply();
+        return count <= RATE_LIMIT ? 0 : count - RATE_LIMIT;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016-2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.push;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.mokee.utils.MoKeeUtils;
+import android.text.TextUtils;
+
+import com.android.internal.os.BackgroundThread;
+import com.mokee.os.Build;
+import com.mokee.os.Build.VERSION;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cn.jpush.android.api.JPushInterface;
+import mokee.providers.MKSettings;
+
+import static org.mokee.mkparts.push.MoKeePushReceiver.MKPUSH_ALIAS;
+import static org.mokee.mkparts.push.MoKeePushReceiver.MKPUSH_TAGS;
+
+/**
+ * Initializes MoKee Push Service once per process, on the background thread.
+ *
+ * Starting the service reads settings and preferences and computes the device id, none of
+ * which is needed by the broadcasts and providers that usually start this process. It is
+ * requested by the jobs of {@link PushRegistrationJobService} and by the first push
+ * broadcast instead. Callers only pay for posting the initialization, however many times
+ * they request it, until it succeeds.
+ */
+public class PushInitializer {
+
+    public static final String MKPUSH_PREF = "mokee_push";
+
+    private static final AtomicBoolean sRequested = new AtomicBoolean();
+
+    private final Context mContext;
+    private final SharedPreferences prefs;
+
+    private PushInitializer(Context context) {
+        mContext = context;
+        prefs = context.getSharedPreferences(MKPUSH_PREF, 0);
+    }
+
+    /**
+     * Requests the initialization of the push service. Returns immediately, and does
+     * nothing once the service was initialized, or while a request is pending.
+     */
+    public static void initAsync(Context context) {
+        if (!sRequested.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        BackgroundThread.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (isEnabled(appContext)) {
+                    new PushInitializer(appContext).init();
+                } else {
+                    // Let the push setting enable it later on
+                    sRequested.set(false);
+                }
+            }
+        });
+    }
+
+    static boolean isEnabled(Context context) {
+        return MoKeeUtils.isSupportLanguage(true)
+                && MKSettings.System.getInt(context.getContentResolver(),
+                        MKSettings.System.RECEIVE_PUSH_NOTIFICATIONS, 1) == 1;
+    }
+
+    private void init() {
+        // Init MoKee Push Service
+        JPushInterface.setDebugMode(false);
+        JPushInterface.init(mContext);
+
+        // Set Alias and Tags
+        String alias = Build.getUniqueID(mContext);
+        Set<String> tags = new HashSet<>();
+        tags.add(Build.PRODUCT);
+        tags.add(VERSION.CODENAME);
+        tags.add(android.os.Build.USER);
+        // Without a device id, only the tags are registered
+        if (TextUtils.isEmpty(alias)) alias = null;
+
+        String prefAlias = prefs.getString(MKPUSH_ALIAS, null);
+        Set<String> prefTags = prefs.getStringSet(MKPUSH_TAGS, null);
+        if ((alias != null && !alias.equals(prefAlias)) || !tags.equals(prefTags)) {
+            PushRegistrationJobService.enqueue(mContext, alias, tags);
+        }
+    }
+}
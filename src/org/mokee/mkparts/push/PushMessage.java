@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.push;
+
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * The custom content of a push message.
+ *
+ * Only the keys shown to the user are read, with a streaming reader. Messages targeted
+ * at other devices or release types are dropped as soon as their targeting is read.
+ */
+public class PushMessage {
+
+    private static final String TAG = MoKeePushReceiver.TAG;
+
+    public final String title;
+    public final String url;
+    public final String clipboard;
+
+    private PushMessage(String title, String url, String clipboard) {
+        this.title = title;
+        this.url = url;
+        this.clipboard = clipboard;
+    }
+
+    /**
+     * @return the message, or null if it is malformed, untitled or not targeted at this device
+     */
+    public static PushMessage parse(String customContentString) {
+        String title = null;
+        String url = null;
+        String clipboard = null;
+
+        JsonReader reader = new JsonReader(new StringReader(customContentString));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case PushingUtils.KEY_DEVICE:
+                        if (!PushingUtils.isTargetDevice(reader.nextString())) return null;
+                        break;
+                    case PushingUtils.KEY_TYPE:
+                        if (!PushingUtils.isTargetType(reader.nextString())) return null;
+                        break;
+                    case PushingUtils.KEY_TITLE:
+                        title = reader.nextString();
+                        break;
+                    case PushingUtils.KEY_URL:
+                        url = reader.nextString();
+                        break;
+                    case PushingUtils.KEY_CLIPBOARD:
+                        clipboard = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.w(TAG, "Malformed push message", e);
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        if (TextUtils.isEmpty(title)) return null;
+        return new PushMessage(title, url, clipboard);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.push;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.internal.os.BackgroundThread;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import cn.jpush.android.api.JPushInterface;
+import cn.jpush.android.api.TagAliasCallback;
+import mokee.providers.MKSettings;
+
+import static org.mokee.mkparts.push.MoKeePushReceiver.MKPUSH_ALIAS;
+import static org.mokee.mkparts.push.MoKeePushReceiver.MKPUSH_TAGS;
+import static org.mokee.mkparts.push.MoKeePushReceiver.TAG;
+import static org.mokee.mkparts.push.PushInitializer.MKPUSH_PREF;
+
+/**
+ * Registers the alias and tags of the device with MoKee Push Service, and initializes
+ * the service when needed.
+ *
+ * The initialization runs from a persisted periodic job, so the service is started again
+ * in a process that was killed, and from a job triggered by changes of the push setting,
+ * so enabling it takes effect right away.
+ *
+ * The pending registration is kept in the push preferences and runs as a persisted job
+ * requiring a network, so it survives process death and reboots. Alias and tags always go
+ * out in a single call. Timeouts are retried with an exponential backoff, randomized so
+ * that devices failing together don't retry together.
+ */
+public class PushRegistrationJobService extends JobService {
+
+    // Out of the range of the stats upload jobs
+    private static final int JOB_ID = 2001;
+    private static final int JOB_ID_INIT = 2002;
+    private static final int JOB_ID_SETTING_CHANGED = 2003;
+
+    private static final long INIT_PERIOD = 3L * 60L * 60L * 1000L;
+
+    private static final String MKPUSH_PENDING_ALIAS = "pref_pending_alias";
+    private static final String MKPUSH_PENDING_TAGS = "pref_pending_tags";
+    private static final String MKPUSH_RETRY_COUNT = "pref_retry_count";
+
+    private static final int RESULT_SUCCESS = 0;
+    private static final int RESULT_TIMEOUT = 6002;
+
+    private static final long RETRY_BASE_DELAY = 60L * 1000L;
+    private static final long RETRY_MAX_DELAY = 6L * 60L * 60L * 1000L;
+
+    // Registrations waiting for their result, and not stopped
+    private final Map<JobParameters, RegistrationCallback> mCurrentJobs
+            = Collections.synchronizedMap(new ArrayMap<>());
+
+    /**
+     * Schedules the initialization of the push service, when a network is available and
+     * when the push setting changes. Does nothing if already scheduled.
+     */
+    public static void scheduleInit(Context context) {
+        final JobScheduler jobScheduler = getJobScheduler(context);
+        if (jobScheduler.getPendingJob(JOB_ID_INIT) == null) {
+            jobScheduler.schedule(new JobInfo.Builder(JOB_ID_INIT,
+                    new ComponentName(context, PushRegistrationJobService.class))
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                    .setPeriodic(INIT_PERIOD)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (jobScheduler.getPendingJob(JOB_ID_SETTING_CHANGED) == null) {
+            scheduleSettingObserver(context);
+        }
+    }
+
+    private static void scheduleSettingObserver(Context context) {
+        // Content triggers can't be persisted, the boot and periodic jobs schedule it again
+        getJobScheduler(context).schedule(new JobInfo.Builder(JOB_ID_SETTING_CHANGED,
+                new ComponentName(context, PushRegistrationJobService.class))
+                .addTriggerContentUri(new JobInfo.TriggerContentUri(
+                        MKSettings.System.getUriFor(MKSettings.System.RECEIVE_PUSH_NOTIFICATIONS),
+                        0))
+                .build());
+    }
+
+    /**
+     * Queues the registration of an alias and tags, replacing any pending one. Keeps the
+     * current backoff when the same registration is already pending.
+     *
+     * @param alias the alias, or null to register the tags only
+     */
+    static void enqueue(Context context, String alias, Set<String> tags) {
+        final SharedPreferences prefs = context.getSharedPreferences(MKPUSH_PREF, 0);
+        if (!TextUtils.equals(alias, prefs.getString(MKPUSH_PENDING_ALIAS, null))
+                || !tags.equals(prefs.getStringSet(MKPUSH_PENDING_TAGS, null))) {
+            prefs.edit()
+                    .putString(MKPUSH_PENDING_ALIAS, alias)
+                    .putStringSet(MKPUSH_PENDING_TAGS, tags)
+                    .putInt(MKPUSH_RETRY_COUNT, 0)
+                    .apply();
+            schedule(context, 0);
+        } else if (getJobScheduler(context).getPendingJob(JOB_ID) == null) {
+            schedule(context, prefs.getInt(MKPUSH_RETRY_COUNT, 0));
+        }
+    }
+
+    private static void schedule(Context context, int retryCount) {
+        final long delay = getRetryDelay(retryCount);
+        Log.d(TAG, "Scheduling push registration, attempt " + (retryCount + 1)
+                + " in " + delay / 1000 + "s");
+        getJobScheduler(context).schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, PushRegistrationJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setMinimumLatency(delay)
+                .setPersisted(true)
+                .build());
+    }
+
+    private static long getRetryDelay(int retryCount) {
+        if (retryCount == 0) {
+            return 0;
+        }
+        final long delay = Math.min(RETRY_BASE_DELAY << Math.min(retryCount - 1, 16),
+                RETRY_MAX_DELAY);
+        // Spread the retries over the upper half of the backoff window
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static JobScheduler getJobScheduler(Context context) {
+        return (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        Log.d(TAG, "onStartJob() called with " + "jobParameters = [" + jobParameters + "]");
+
+        if (jobParameters.getJobId() == JOB_ID_INIT) {
+            // Queues the registration too, if needed
+            PushInitializer.initAsync(this);
+            scheduleInit(this);
+            return false;
+        } else if (jobParameters.getJobId() == JOB_ID_SETTING_CHANGED) {
+            // Content trigger jobs only run once
+            scheduleSettingObserver(this);
+            PushInitializer.initAsync(this);
+            return false;
+        }
+
+        final SharedPreferences prefs = getSharedPreferences(MKPUSH_PREF, 0);
+        // A null alias leaves the registered one unchanged
+        final String alias = prefs.getString(MKPUSH_PENDING_ALIAS, null);
+        final Set<String> tags = prefs.getStringSet(MKPUSH_PENDING_TAGS, null);
+        if (tags == null) {
+            return false;
+        }
+
+        // Register after the push service is initialized, which happens on the same thread
+        final RegistrationCallback callback = new RegistrationCallback(jobParameters);
+        mCurrentJobs.put(jobParameters, callback);
+        PushInitializer.initAsync(this);
+        BackgroundThread.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (!PushInitializer.isEnabled(getApplicationContext())) {
+                    if (mCurrentJobs.remove(jobParameters) != null) {
+                        jobFinished(jobParameters, false);
+                    }
+                    return;
+                }
+                JPushInterface.setAliasAndTags(getApplicationContext(), alias, tags, callback);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        Log.d(TAG, "onStopJob() called with " + "jobParameters = [" + jobParameters + "]");
+        // Let the scheduler retry with its backoff, a late result is still recorded
+        return mCurrentJobs.remove(jobParameters) != null;
+    }
+
+    private class RegistrationCallback implements TagAliasCallback {
+
+        private final JobParameters mJobParams;
+
+        RegistrationCallback(JobParameters jobParams) {
+            mJobParams = jobParams;
+        }
+
+        @Override
+        public void gotResult(int code, String alias, Set<String> tags) {
+            // A stopped job was already rescheduled by onStopJob()
+            final boolean running = mCurrentJobs.remove(mJobParams) != null;
+            final SharedPreferences prefs = getSharedPreferences(MKPUSH_PREF, 0);
+            switch (code) {
+                case RESULT_SUCCESS:
+                    Log.i(TAG, "Set alias and tags success");
+                    final SharedPreferences.Editor editor = prefs.edit();
+                    if (alias != null) {
+                        editor.putString(MKPUSH_ALIAS, alias);
+                    }
+                    editor.putStringSet(MKPUSH_TAGS, tags)
+                            .remove(MKPUSH_PENDING_ALIAS)
+                            .remove(MKPUSH_PENDING_TAGS)
+                            .remove(MKPUSH_RETRY_COUNT)
+                            .apply();
+                    if (running) {
+                        jobFinished(mJobParams, false);
+                    }
+                    break;
+                case RESULT_TIMEOUT:
+                    Log.i(TAG, "Failed to set alias and tags due to timeout");
+                    if (!running) {
+                        break;
+                    }
+                    final int retryCount = prefs.getInt(MKPUSH_RETRY_COUNT, 0) + 1;
+                    prefs.edit().putInt(MKPUSH_RETRY_COUNT, retryCount).apply();
+                    jobFinished(mJobParams, false);
+                    schedule(PushRegistrationJobService.this, retryCount);
+                    break;
+                default:
+                    Log.e(TAG, "Failed with errorCode = " + code);
+                    prefs.edit()
+                            .remove(MKPUSH_PENDING_ALIAS)
+                            .remove(MKPUSH_PENDING_TAGS)
+                            .remove(MKPUSH_RETRY_COUNT)
+                            .apply();
+                    if (running) {
+                        jobFinished(mJobParams, false);
+                    }
+            }
+        }
+    }
+}
@@ -16,12 +16,7 @@
 
 package org.mokee.mkparts.push;
 
-import android.text.TextUtils;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Locale;
+import com.mokee.os.Build;
 
 public class PushingUtils {
 
@@ -31,28 +26,39 @@ public class PushingUtils {
     public static final String KEY_URL = "url";
     public static final String KEY_CLIPBOARD = "clipboard";
 
-    public static boolean verifyPush(String str1, String str2) {
-        String[] list = str1.split(",");
-        for (String value : list) {
-            if (TextUtils.equals(str2.toLowerCase(Locale.ENGLISH), value.toLowerCase(Locale.ENGLISH))) {
-                return true;
-            }
-        }
-        return false;
+    private static final String TARGET_ALL = "all";
+
+    // Neither changes until the next boot
+    private static final String sProduct = Build.PRODUCT;
+    private static final String sReleaseType = Build.RELEASE_TYPE;
+
+    /**
+     * @return whether a comma separated list of products includes this device
+     */
+    public static boolean isTargetDevice(String devices) {
+        return TARGET_ALL.equals(devices) || containsIgnoreCase(devices, sProduct);
     }
 
-    public static String getStringFromJson(String key, JSONObject json) {
-        return getStringFromJson(key, json, null);
+    /**
+     * @return whether a comma separated list of release types includes this build
+     */
+    public static boolean isTargetType(String types) {
+        return TARGET_ALL.equals(types) || containsIgnoreCase(types, sReleaseType);
     }
 
-    public static String getStringFromJson(String key, JSONObject json, String def) {
-        if (!json.isNull(key)) {
-            try {
-                return json.getString(key);
-            } catch (JSONException e) {
-                e.printStackTrace();
+    private static boolean containsIgnoreCase(String list, String value) {
+        final int length = value.length();
+        int start = 0;
+        while (start <= list.length()) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = list.length();
             }
+            if (end - start == length && list.regionMatches(true, start, value, 0, length)) {
+                return true;
+            }
+            start = end + 1;
         }
-        return def;
+        return false;
     }
 }
@@ -16,18 +16,21 @@
  */
 package org.mokee.mkparts.search;
 
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.provider.SearchIndexablesProvider;
 import android.util.ArraySet;
-import android.util.Log;
 
+import org.mokee.mkparts.PartsRegistry;
 import org.mokee.mkparts.search.Searchable.SearchIndexProvider;
 import org.mokee.internal.mkparts.PartInfo;
 import org.mokee.internal.mkparts.PartsList;
 import org.mokee.platform.internal.R;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -63,13 +66,19 @@ import static org.mokee.internal.mkparts.PartsList.MKPARTS_ACTIVITY;
 
 /**
  * Provides search metadata to the Settings app
+ *
+ * Raw data and non-indexable keys only change with the package or the locale, so they are
+ * built once and served from memory until one of them changes.
  */
 public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
 
     private static final String TAG = MKPartsSearchIndexablesProvider.class.getSimpleName();
 
-    private static final String FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER =
-            "SEARCH_INDEX_DATA_PROVIDER";
+    // Rows of the last queries, valid as long as the cache key doesn't change
+    private final Object mCacheLock = new Object();
+    private String mCacheKey;
+    private List<Object[]> mRawDataRows;
+    private List<Object[]> mNonIndexableKeyRows;
 
     @Override
     public Cursor queryXmlResources(String[] strings) {
@@ -100,7 +109,17 @@ public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
 
     @Override
     public Cursor queryRawData(String[] strings) {
-        MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
+        synchronized (mCacheLock) {
+            validateCache();
+            if (mRawDataRows == null) {
+                mRawDataRows = buildRawData();
+            }
+            return createCursor(INDEXABLES_RAW_COLUMNS, mRawDataRows);
+        }
+    }
+
+    private List<Object[]> buildRawData() {
+        final List<Object[]> rows = new ArrayList<>();
         final Set<String> keys = PartsList.get(getContext()).getPartsList();
 
         // we also submit keywords and metadata for all top-level items
@@ -112,7 +131,7 @@ public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
             }
 
             // look for custom keywords
-            SearchIndexProvider sip = getSearchIndexProvider(i.getFragmentClass());
+            SearchIndexProvider sip = PartsRegistry.getSearchIndexProvider(key);
             if (sip == null) {
                 continue;
             }
@@ -153,16 +172,25 @@ public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
                 ref[COLUMN_INDEX_RAW_USER_ID] = -1;
                 ref[COLUMN_INDEX_RAW_PAYLOAD_TYPE] = null;
                 ref[COLUMN_INDEX_RAW_PAYLOAD] = null;
-                cursor.addRow(ref);
+                rows.add(ref);
             }
         }
-        return cursor;
+        return rows;
     }
 
     @Override
     public Cursor queryNonIndexableKeys(String[] strings) {
-        MatrixCursor cursor = new MatrixCursor(NON_INDEXABLES_KEYS_COLUMNS);
+        synchronized (mCacheLock) {
+            validateCache();
+            if (mNonIndexableKeyRows == null) {
+                mNonIndexableKeyRows = buildNonIndexableKeys();
+            }
+            return createCursor(NON_INDEXABLES_KEYS_COLUMNS, mNonIndexableKeyRows);
+        }
+    }
 
+    private List<Object[]> buildNonIndexableKeys() {
+        final List<Object[]> rows = new ArrayList<>();
         final Set<String> keys = PartsList.get(getContext()).getPartsList();
         final Set<String> nonIndexables = new ArraySet<>();
 
@@ -173,7 +201,7 @@ public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
             }
 
             // look for non-indexable keys
-            SearchIndexProvider sip = getSearchIndexProvider(i.getFragmentClass());
+            SearchIndexProvider sip = PartsRegistry.getSearchIndexProvider(key);
             if (sip == null) {
                 continue;
             }
@@ -189,9 +217,9 @@ public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
         for (String nik : nonIndexables) {
             Object[] ref = new Object[1];
             ref[COLUMN_INDEX_NON_INDEXABLE_KEYS_KEY_VALUE] = nik;
-            cursor.addRow(ref);
+            rows.add(ref);
         }
-        return cursor;
+        return rows;
     }
 
     @Override
@@ -199,26 +227,44 @@ public class MKPartsSearchIndexablesProvider extends SearchIndexablesProvider {
         return true;
     }
 
-    private SearchIndexProvider getSearchIndexProvider(final String className) {
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        synchronized (mCacheLock) {
+            validateCache();
+        }
+    }
 
-        final Class<?> clazz;
-        try {
-            clazz = Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Cannot find class: " + className);
-            return null;
+    private static Cursor createCursor(String[] columns, List<Object[]> rows) {
+        // Callers close the cursor, so every query gets its own copy of the rows
+        MatrixCursor cursor = new MatrixCursor(columns, rows.size());
+        for (Object[] row : rows) {
+            cursor.addRow(row);
         }
+        return cursor;
+    }
 
-        if (clazz == null || !Searchable.class.isAssignableFrom(clazz)) {
-            return null;
+    /**
+     * Drops the cached rows if they were built for another package version or locale.
+     * Must be called with mCacheLock held.
+     */
+    private void validateCache() {
+        final String key = getCacheKey();
+        if (key == null || !key.equals(mCacheKey)) {
+            mCacheKey = key;
+            mRawDataRows = null;
+            mNonIndexableKeyRows = null;
         }
+    }
 
+    private String getCacheKey() {
         try {
-            final Field f = clazz.getField(FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER);
-            return (SearchIndexProvider) f.get(null);
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
+            PackageInfo pi = getContext().getPackageManager().getPackageInfo(
+                    getContext().getPackageName(), 0);
+            return pi.versionCode + ":" + pi.lastUpdateTime + ":"
+                    + getContext().getResources().getConfiguration().getLocales().toLanguageTags();
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
         }
-        return null;
     }
 }
@@ -49,14 +49,12 @@ public class ReportingService extends IntentService {
         final int jobId = Utilities.getNextJobId(getApplicationContext());
         Log.d(Utilities.TAG, "scheduling jobs id: " + jobId);
 
-        PersistableBundle reportBundle = new PersistableBundle();
-        reportBundle.putString(StatsUploadJobService.KEY_UNIQUE_ID, deviceId);
-        reportBundle.putString(StatsUploadJobService.KEY_DEVICE_NAME, deviceName);
-        reportBundle.putString(StatsUploadJobService.KEY_VERSION, deviceVersion);
-        reportBundle.putString(StatsUploadJobService.KEY_COUNTRY, deviceCountry);
-        reportBundle.putString(StatsUploadJobService.KEY_CARRIER, deviceCarrier);
-        reportBundle.putString(StatsUploadJobService.KEY_CARRIER_ID, deviceCarrierId);
+        // queue the checkin, it stays there until an upload including it succeeds
+        new StatsQueue(getApplicationContext()).add(StatsUploadJobService.buildReport(
+                deviceId, deviceName, deviceVersion, deviceCountry, deviceCarrier,
+                deviceCarrierId));
 
+        PersistableBundle reportBundle = new PersistableBundle();
         // set job types
         reportBundle.putInt(StatsUploadJobService.KEY_JOB_TYPE,
                 StatsUploadJobService.JOB_TYPE_REPORT);
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.stats;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of the check-ins waiting to be uploaded, one encoded report per line.
+ *
+ * Reports stay queued until an upload including them succeeds. The queue keeps at most
+ * {@link #MAX_QUEUED} reports, dropping the oldest ones first.
+ */
+public class StatsQueue {
+
+    private static final String QUEUE_FILE = "stats_queue";
+
+    /* package */ static final int MAX_QUEUED = 20;
+
+    private static final Object sLock = new Object();
+
+    private final File mFile;
+
+    public StatsQueue(Context context) {
+        mFile = new File(context.getFilesDir(), QUEUE_FILE);
+    }
+
+    /**
+     * Appends a report to the queue.
+     */
+    public void add(String report) {
+        synchronized (sLock) {
+            try (Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(mFile, true), StandardCharsets.UTF_8)) {
+                writer.write(report);
+                writer.write('\n');
+            } catch (IOException e) {
+                Log.e(Utilities.TAG, "Could not queue stats checkin", e);
+                return;
+            }
+
+            final List<String> reports = readLocked();
+            if (reports.size() > MAX_QUEUED) {
+                writeLocked(reports.subList(reports.size() - MAX_QUEUED, reports.size()));
+            }
+        }
+    }
+
+    /**
+     * @return the queued reports, oldest first
+     */
+    public List<String> peekAll() {
+        synchronized (sLock) {
+            return readLocked();
+        }
+    }
+
+    /**
+     * Removes a report, once uploaded. Reports queued or dropped meanwhile are left as is.
+     */
+    public void remove(String report) {
+        synchronized (sLock) {
+            final List<String> reports = readLocked();
+            if (reports.remove(report)) {
+                writeLocked(reports);
+            }
+        }
+    }
+
+    private List<String> readLocked() {
+        final List<String> reports = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isEmpty()) {
+                    reports.add(line);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing queued
+        } catch (IOException e) {
+            Log.e(Utilities.TAG, "Could not read stats queue", e);
+        }
+        return reports;
+    }
+
+    private void writeLocked(List<String> reports) {
+        if (reports.isEmpty()) {
+            mFile.delete();
+            return;
+        }
+        final File temp = new File(mFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (String report : reports) {
+                writer.write(report);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.e(Utilities.TAG, "Could not write stats queue", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(mFile)) {
+            Log.e(Utilities.TAG, "Could not replace stats queue");
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.stats;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends queued check-ins to the stats server.
+ */
+public interface StatsTransport {
+
+    /**
+     * Uploads a single report.
+     *
+     * @param signal aborts the request in progress when cancelled
+     * @return the response body
+     * @throws IOException if the upload failed and the report should be kept
+     */
+    String send(String report, CancellationSignal signal) throws IOException;
+
+    /**
+     * Posts each report as the urlencoded form body of its own request.
+     */
+    class Http implements StatsTransport {
+
+        private static final int REQUEST_TIMEOUT = 60000;
+
+        private final URL mUrl;
+
+        public Http(URL url) {
+            mUrl = url;
+        }
+
+        @Override
+        public String send(String report, CancellationSignal signal) throws IOException {
+            final HttpURLConnection urlConnection = (HttpURLConnection) mUrl.openConnection();
+            // Blocked reads and writes don't respond to interrupts, closing the socket does
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    urlConnection.disconnect();
+                }
+            });
+            try {
+                signal.throwIfCanceled();
+                urlConnection.setInstanceFollowRedirects(true);
+                urlConnection.setRequestMethod("POST");
+                urlConnection.setConnectTimeout(REQUEST_TIMEOUT);
+                urlConnection.setReadTimeout(REQUEST_TIMEOUT);
+                urlConnection.setDoInput(true);
+                urlConnection.setDoOutput(true);
+                urlConnection.setUseCaches(false);
+                urlConnection.setRequestProperty("Accept-Charset", "utf-8");
+                final byte[] bytes = report.getBytes(StandardCharsets.UTF_8);
+                urlConnection.setFixedLengthStreamingMode(bytes.length);
+                urlConnection.getOutputStream().write(bytes);
+
+                final int responseCode = urlConnection.getResponseCode();
+                Log.d(Utilities.TAG, "mokee server response code=" + responseCode);
+                final boolean success = responseCode == HttpURLConnection.HTTP_OK;
+                final String response = readResponse(success
+                        ? urlConnection.getInputStream()
+                        : urlConnection.getErrorStream());
+                if (!success) {
+                    throw new IOException("failed sending, server returned: " + response);
+                }
+                return response;
+            } finally {
+                signal.setOnCancelListener(null);
+                urlConnection.disconnect();
+            }
+        }
+
+        private static String readResponse(InputStream in) throws IOException {
+            if (in == null) {
+                return "";
+            }
+            StringBuilder builder = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    builder.append(line).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
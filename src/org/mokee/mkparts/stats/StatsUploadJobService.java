@@ -20,24 +20,24 @@ import android.app.job.JobParameters;
 import android.app.job.JobService;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
-import android.os.PersistableBundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.ArrayMap;
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.mokee.mkparts.R;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import com.mokee.os.Build;
 
@@ -46,8 +46,6 @@ public class StatsUploadJobService extends JobService {
     public static final String KEY_JOB_TYPE = "job_type";
     public static final int JOB_TYPE_REPORT = 1;
 
-    private static final int REQUEST_TIMEOUT = 60000;
-
     public static final String KEY_UNIQUE_ID = "device_hash";
     public static final String KEY_DEVICE_NAME = "device_name";
     public static final String KEY_VERSION = "device_version";
@@ -55,16 +53,57 @@ public class StatsUploadJobService extends JobService {
     public static final String KEY_CARRIER = "device_carrier";
     public static final String KEY_CARRIER_ID = "device_carrier_id";
 
+    private static StatsTransport sTransport;
+
     private final Map<JobParameters, StatsReportTask> mCurrentJobs
             = Collections.synchronizedMap(new ArrayMap<>());
 
+    /**
+     * Replaces the transport the queued check-ins are uploaded with.
+     */
+    @VisibleForTesting
+    public static synchronized void setTransport(StatsTransport transport) {
+        sTransport = transport;
+    }
+
+    private StatsTransport getTransport() throws IOException {
+        synchronized (StatsUploadJobService.class) {
+            if (sTransport == null) {
+                sTransport = new StatsTransport.Http(new URL(getString(R.string.stats_report_url)));
+            }
+            return sTransport;
+        }
+    }
+
+    /**
+     * @return a check-in, encoded for {@link StatsQueue}
+     */
+    public static String buildReport(String deviceId, String deviceName, String deviceVersion,
+            String deviceCountry, String deviceCarrier, String deviceCarrierId) {
+        StringBuilder params = new StringBuilder();
+        appendParam(params, KEY_UNIQUE_ID, deviceId);
+        appendParam(params, KEY_DEVICE_NAME, deviceName);
+        appendParam(params, KEY_VERSION, deviceVersion);
+        appendParam(params, KEY_COUNTRY, deviceCountry);
+        appendParam(params, KEY_CARRIER, deviceCarrier);
+        appendParam(params, KEY_CARRIER_ID, deviceCarrierId);
+        return params.toString();
+    }
+
+    private static void appendParam(StringBuilder params, String key, String value) {
+        if (params.length() > 0) {
+            params.append('&');
+        }
+        params.append(key).append('=').append(value);
+    }
+
     @Override
     public boolean onStartJob(JobParameters jobParameters) {
         Log.d(Utilities.TAG, "onStartJob() called with " + "jobParameters = [" + jobParameters + "]");
 
         final StatsReportTask reportTask = new StatsReportTask(jobParameters);
         mCurrentJobs.put(jobParameters, reportTask);
-        reportTask.execute((Void) null);
+        reportTask.mFuture = BackgroundExecutor.get().submit(reportTask);
         return true;
     }
 
@@ -77,102 +116,68 @@ public class StatsUploadJobService extends JobService {
 
         if (cancelledJob != null) {
             // cancel the ongoing background task
-            cancelledJob.cancel(true);
+            cancelledJob.cancel();
             return true; // reschedule
         }
 
         return false;
     }
 
-    private class StatsReportTask extends AsyncTask<Void, Void, Boolean> {
-
-        private JobParameters mJobParams;
+    private class StatsReportTask implements Runnable {
 
-        InputStream responseStream;
+        private final JobParameters mJobParams;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+        private volatile Future<?> mFuture;
 
         public StatsReportTask(JobParameters jobParams) {
             this.mJobParams = jobParams;
         }
 
-        @Override
-        protected Boolean doInBackground(Void... params) {
-
-            PersistableBundle extras = mJobParams.getExtras();
-
-            String deviceId = extras.getString(KEY_UNIQUE_ID);
-            String deviceName = extras.getString(KEY_DEVICE_NAME);
-            String deviceVersion = extras.getString(KEY_VERSION);
-            String deviceCountry = extras.getString(KEY_COUNTRY);
-            String deviceCarrier = extras.getString(KEY_CARRIER);
-            String deviceCarrierId = extras.getString(KEY_CARRIER_ID);
-
-            boolean success = false;
-            if (!isCancelled()) {
-                try {
-                    success = reportToServer(deviceId, deviceName, deviceVersion, deviceCountry,
-                            deviceCarrier, deviceCarrierId);
-                } catch (IOException e) {
-                    Log.e(Utilities.TAG, "Could not upload stats checkin to commnity server", e);
-                    success = false;
-                }
+        public void cancel() {
+            mCancellationSignal.cancel();
+            final Future<?> future = mFuture;
+            if (future != null) {
+                future.cancel(true);
             }
-
-            Log.d(Utilities.TAG, "job id " + mJobParams.getJobId() + ", has finished with success="
-                    + success);
-            return success;
         }
 
-        private boolean reportToServer(String deviceId, String deviceName, String deviceVersion,
-                String deviceCountry, String deviceCarrier, String deviceCarrierId) throws IOException {
-
-            StringBuffer params = new StringBuffer();
-            params.append(KEY_UNIQUE_ID + "=" + deviceId + "&")
-                    .append(KEY_DEVICE_NAME + "=" + deviceName + "&")
-                    .append(KEY_VERSION + "=" + deviceVersion + "&")
-                    .append(KEY_COUNTRY + "=" + deviceCountry + "&")
-                    .append(KEY_CARRIER + "=" + deviceCarrier + "&")
-                    .append(KEY_CARRIER_ID + "=" + deviceCarrierId);
+        @Override
+        public void run() {
+            final StatsQueue queue = new StatsQueue(getApplicationContext());
+            final List<String> reports = queue.peekAll();
+            if (reports.isEmpty()) {
+                Log.d(Utilities.TAG, "job id " + mJobParams.getJobId() + ", nothing queued");
+                finish(true);
+                return;
+            }
 
-            URL url = new URL(getString(R.string.stats_report_url));
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+            String response = null;
             try {
-                urlConnection.setInstanceFollowRedirects(true);
-                urlConnection.setRequestMethod("POST");
-                urlConnection.setConnectTimeout(REQUEST_TIMEOUT);
-                urlConnection.setReadTimeout(REQUEST_TIMEOUT);
-                urlConnection.setDoInput(true);
-                urlConnection.setUseCaches(false);
-                urlConnection.setRequestProperty("Accept-Charset", "utf-8");
-                byte[] bytes = params.toString().getBytes();
-                urlConnection.getOutputStream().write(bytes);
-                urlConnection.connect();
-
-                final int responseCode = urlConnection.getResponseCode();
-
-                Log.d(Utilities.TAG, "mokee server response code=" + responseCode);
-                final boolean success = responseCode == HttpURLConnection.HTTP_OK;
-                responseStream = new BufferedInputStream(!success
-                        ? urlConnection.getErrorStream()
-                        : urlConnection.getInputStream());
-                if (!success) {
-                    Log.w(Utilities.TAG, "failed sending, server returned: " + getResponse(urlConnection,
-                            !success));
+                final StatsTransport transport = getTransport();
+                for (String report : reports) {
+                    response = transport.send(report, mCancellationSignal);
+                    // Reports may have been queued or trimmed meanwhile, drop this one only
+                    queue.remove(report);
+                }
+            } catch (IOException | OperationCanceledException e) {
+                // The reports left are retried with the job
+                response = null;
+                if (!mCancellationSignal.isCanceled()) {
+                    Log.e(Utilities.TAG, "Could not upload stats checkin to commnity server", e);
                 }
-                return success;
-            } finally {
-                urlConnection.disconnect();
             }
-        }
 
-        @Override
-        protected void onPostExecute(Boolean result) {
-            if (result) {
+            final boolean success = response != null;
+            Log.d(Utilities.TAG, "job id " + mJobParams.getJobId() + ", has finished with success="
+                    + success + ", reports=" + reports.size());
+
+            if (success) {
                 String currentVersion = Utilities.getVersion();
                 final SharedPreferences prefs = getSharedPreferences(ReportingServiceManager.ANONYMOUS_PREF, Context.MODE_PRIVATE);
                 long device_flash_time = 0;
                 try {
-                    device_flash_time = Long.valueOf(convertStreamToJSONObject(responseStream).getString("device_flash_time"));
-                } catch (Exception e) {
+                    device_flash_time = Long.valueOf(new JSONObject(response).getString("device_flash_time"));
+                } catch (JSONException | NumberFormatException e) {
                     e.printStackTrace();
                 }
 
@@ -184,37 +189,14 @@ public class StatsUploadJobService extends JobService {
                 Utilities.updateLastSynced(getApplicationContext());
                 ReportingServiceManager.setAlarm(getApplicationContext());
             }
-
-            mCurrentJobs.remove(mJobParams);
-            jobFinished(mJobParams, !result);
-        }
-    }
-
-    private JSONObject convertStreamToJSONObject(InputStream is) throws IOException, JSONException {
-        StringBuilder builder = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        for (String str = reader.readLine(); str != null; str = reader.readLine()) {
-            builder.append(str);
+            finish(success);
         }
-        return new JSONObject(builder.toString());
-    }
 
-    private String getResponse(HttpURLConnection httpUrlConnection, boolean errorStream)
-            throws IOException {
-        InputStream responseStream = new BufferedInputStream(errorStream
-                ? httpUrlConnection.getErrorStream()
-                : httpUrlConnection.getInputStream());
-
-        BufferedReader responseStreamReader = new BufferedReader(
-                new InputStreamReader(responseStream));
-        String line = "";
-        StringBuilder stringBuilder = new StringBuilder();
-        while ((line = responseStreamReader.readLine()) != null) {
-            stringBuilder.append(line).append("\n");
+        private void finish(boolean success) {
+            // A stopped job was already rescheduled by onStopJob()
+            if (mCurrentJobs.remove(mJobParams) != null) {
+                jobFinished(mJobParams, !success);
+            }
         }
-        responseStreamReader.close();
-        responseStream.close();
-
-        return stringBuilder.toString();
     }
 }
@@ -46,6 +46,7 @@ import org.mokee.mkparts.style.models.StyleStatus;
 import org.mokee.mkparts.style.util.AccentAdapter;
 import org.mokee.mkparts.style.util.AccentUtils;
 import org.mokee.mkparts.style.util.UIUtils;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 
 import mokee.providers.MKSettings;
 import mokee.style.StyleInterface;
@@ -180,7 +181,8 @@ public class StylePreferences extends SettingsPreferenceFragment {
             colorsArray[i] = mAccents.get(i).getColor();
         }
 
-        new AutomagicTask(mInterface, bitmap, this::onAutomagicCompleted).execute(colorsArray);
+        new AutomagicTask(mInterface, bitmap, this::onAutomagicCompleted).executeOnExecutor(
+                BackgroundExecutor.get(), colorsArray);
         return true;
     }
 
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mokee.mkparts.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ComponentInfo;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.internal.os.BackgroundThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+
+/**
+ * Process wide cache of the icons and labels of applications and their components.
+ *
+ * Icons are kept downscaled to the launcher icon size, in memory and in the cache dir,
+ * keyed by component, version code and density. Labels are kept in memory. Entries of a
+ * package are dropped when it changes, and labels when the locale changes. The cache dir
+ * keeps the {@link #MAX_DISK_ICONS} most recently written icons, and drops the ones of packages
+ * removed or updated while the process wasn't running.
+ *
+ * Lookups missing the memory cache read the cache dir or load from the package manager on
+ * the calling thread, so the UI thread should go through the async variants. Icons are
+ * written to the cache dir in the background.
+ */
+public class AppIconCache {
+
+    private static final String TAG = AppIconCache.class.getSimpleName();
+
+    private static final String ICON_DIR = "app_icons";
+    private static final char KEY_SEPARATOR = '#';
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAX_LABELS = 512;
+    private static final int MAX_DISK_ICONS = 256;
+
+    private static AppIconCache sInstance;
+
+    private final Context mContext;
+    private final PackageManager mPm;
+    private final Resources mResources;
+    private final int mIconSize;
+    private final int mDensity;
+    private final File mIconDir;
+
+    private final LruCache<String, Bitmap> mIcons;
+    private final LruCache<String, CharSequence> mLabels = new LruCache<>(MAX_LABELS);
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Orders the writes and deletions of the cache dir
+    private final Executor mDiskExecutor = BackgroundExecutor.newSerialExecutor();
+    private boolean mIconDirPruned;
+    // Bumped by each invalidation of a package, so loads started before it are not kept
+    private final ArrayMap<String, Integer> mGenerations = new ArrayMap<>();
+
+    public interface IconCallback {
+        /**
+         * Called on the main thread, with null if the package isn't installed.
+         */
+        void onIconLoaded(Drawable icon);
+    }
+
+    private AppIconCache(Context context) {
+        mContext = context;
+        mPm = context.getPackageManager();
+        mResources = context.getResources();
+        mIconSize = mResources.getDimensionPixelSize(android.R.dimen.app_icon_size);
+        mDensity = mResources.getDisplayMetrics().densityDpi;
+        mIconDir = new File(context.getCacheDir(), ICON_DIR);
+
+        final int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32,
+                4 * 1024 * 1024);
+        mIcons = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        mContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                final Uri data = intent.getData();
+                if (data != null) {
+                    invalidate(data.getSchemeSpecificPart());
+                }
+            }
+        }, filter, null, BackgroundThread.getHandler());
+        mContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mLabels.evictAll();
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED), null, BackgroundThread.getHandler());
+    }
+
+    public static synchronized AppIconCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppIconCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    public Drawable getIcon(final ApplicationInfo info) {
+        return getIcon(getKey(info.packageName, null, info.versionCode), new Loader() {
+            @Override
+            public Drawable loadIcon() {
+                return info.loadIcon(mPm);
+            }
+        });
+    }
+
+    /**
+     * Hands the icon of an application to the callback, right away if it is in memory,
+     * otherwise once loaded in the background.
+     */
+    public void getIconAsync(final ApplicationInfo info, final IconCallback callback) {
+        final Bitmap icon = mIcons.get(getKey(info.packageName, null, info.versionCode));
+        if (icon != null) {
+            callback.onIconLoaded(new BitmapDrawable(mResources, icon));
+            return;
+        }
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                postResult(callback, getIcon(info));
+            }
+        });
+    }
+
+    /**
+     * Hands the icon of an installed package to the callback, once loaded in the background.
+     */
+    public void getIconAsync(final String packageName, final IconCallback callback) {
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                postResult(callback, getIcon(packageName));
+            }
+        });
+    }
+
+    private void postResult(final IconCallback callback, final Drawable icon) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onIconLoaded(icon);
+            }
+        });
+    }
+
+    public CharSequence getLabel(ApplicationInfo info) {
+        final String key = getKey(info.packageName, null, info.versionCode);
+        CharSequence label = mLabels.get(key);
+        if (label == null) {
+            label = info.loadLabel(mPm);
+            mLabels.put(key, label);
+        }
+        return label;
+    }
+
+    /**
+     * @return the icon of an installed package, or null if it isn't installed
+     */
+    public Drawable getIcon(String packageName) {
+        try {
+            return getIcon(mPm.getApplicationInfo(packageName, 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    public Drawable getIcon(final ResolveInfo info) {
+        return getIcon(getKey(info), new Loader() {
+            @Override
+            public Drawable loadIcon() {
+                return info.loadIcon(mPm);
+            }
+        });
+    }
+
+    public CharSequence getLabel(ResolveInfo info) {
+        final String key = getKey(info);
+        CharSequence label = mLabels.get(key);
+        if (label == null) {
+            label = info.loadLabel(mPm);
+            mLabels.put(key, label);
+        }
+        return label;
+    }
+
+    public Drawable getIcon(final LauncherActivityInfo info) {
+        return getIcon(getKey(info), new Loader() {
+            @Override
+            public Drawable loadIcon() {
+                return info.getIcon(mDensity);
+            }
+        });
+    }
+
+    public CharSequence getLabel(LauncherActivityInfo info) {
+        final String key = getKey(info);
+        CharSequence label = mLabels.get(key);
+        if (label == null) {
+            label = info.getLabel();
+            mLabels.put(key, label);
+        }
+        return label;
+    }
+
+    private interface Loader {
+        Drawable loadIcon();
+    }
+
+    private Drawable getIcon(String key, Loader loader) {
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            final String packageName = key.substring(0, key.indexOf(KEY_SEPARATOR));
+            final int generation = getGeneration(packageName);
+            final File file = new File(mIconDir, key + ".png");
+            if (file.exists()) {
+                icon = BitmapFactory.decodeFile(file.getPath());
+            }
+            if (icon == null) {
+                icon = toBitmap(loader.loadIcon());
+                if (generation == getGeneration(packageName)) {
+                    writeIconAsync(file, icon, packageName, generation);
+                }
+            }
+            synchronized (mGenerations) {
+                // The package changed while loading, keep the icon out of the cache
+                if (generation == getGeneration(packageName)) {
+                    mIcons.put(key, icon);
+                }
+            }
+        }
+        return new BitmapDrawable(mResources, icon);
+    }
+
+    private int getGeneration(String packageName) {
+        synchronized (mGenerations) {
+            final Integer generation = mGenerations.get(packageName);
+            return generation != null ? generation : 0;
+        }
+    }
+
+    private Bitmap toBitmap(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null && bitmap.getWidth() <= mIconSize
+                    && bitmap.getHeight() <= mIconSize) {
+                return bitmap;
+            }
+        }
+        final Bitmap bitmap = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        final Rect bounds = drawable.copyBounds();
+        drawable.setBounds(0, 0, mIconSize, mIconSize);
+        drawable.draw(new Canvas(bitmap));
+        drawable.setBounds(bounds);
+        return bitmap;
+    }
+
+    private void writeIconAsync(final File file, final Bitmap icon, final String packageName,
+            final int generation) {
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Don't bring back a file deleted by an invalidation queued before
+                if (generation != getGeneration(packageName)) {
+                    return;
+                }
+                writeIcon(file, icon);
+                trimIconDir();
+            }
+        });
+    }
+
+    private void writeIcon(File file, Bitmap icon) {
+        if (!mIconDir.isDirectory() && !mIconDir.mkdirs()) {
+            return;
+        }
+        // Readers decode without locking, so they must never see a partial file
+        final File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache icon " + file.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Could not cache icon " + file.getName());
+            temp.delete();
+        }
+    }
+
+    private void trimIconDir() {
+        if (!mIconDirPruned) {
+            pruneIconDir();
+            mIconDirPruned = true;
+        }
+        final File[] files = mIconDir.listFiles();
+        if (files == null || files.length <= MAX_DISK_ICONS) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.compare(lhs.lastModified(), rhs.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - MAX_DISK_ICONS; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Deletes the icons of versions no longer installed, left by changes the process
+     * didn't see, and the temporary files of interrupted writes.
+     */
+    private void pruneIconDir() {
+        final File[] files = mIconDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final ArrayMap<String, String> versions = new ArrayMap<>();
+        for (File file : files) {
+            final String name = file.getName();
+            final String[] parts = name.split(String.valueOf(KEY_SEPARATOR));
+            if (name.endsWith(TEMP_SUFFIX) || parts.length < 3) {
+                file.delete();
+                continue;
+            }
+            final String packageName = parts[0];
+            String versionCode = versions.get(packageName);
+            if (versionCode == null && !versions.containsKey(packageName)) {
+                try {
+                    PackageInfo info = mPm.getPackageInfo(packageName,
+                            PackageManager.MATCH_ANY_USER);
+                    versionCode = String.valueOf(info.versionCode);
+                } catch (PackageManager.NameNotFoundException e) {
+                    // Removed
+                }
+                versions.put(packageName, versionCode);
+            }
+            if (!parts[parts.length - 2].equals(versionCode)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Drops the icons and labels of a package.
+     */
+    public void invalidate(String packageName) {
+        final String prefix = packageName + KEY_SEPARATOR;
+        synchronized (mGenerations) {
+            mGenerations.put(packageName, getGeneration(packageName) + 1);
+            for (String key : mIcons.snapshot().keySet()) {
+                if (key.startsWith(prefix)) {
+                    mIcons.remove(key);
+                }
+            }
+        }
+        for (String key : mLabels.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mLabels.remove(key);
+            }
+        }
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final File[] files = mIconDir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (file.getName().startsWith(prefix)) {
+                            file.delete();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private String getKey(ResolveInfo info) {
+        final ComponentInfo component = info.activityInfo != null ? info.activityInfo
+                : info.serviceInfo != null ? info.serviceInfo : info.providerInfo;
+        return getKey(component.packageName, component.name,
+                component.applicationInfo.versionCode);
+    }
+
+    private String getKey(LauncherActivityInfo info) {
+        final ComponentName component = info.getComponentName();
+        final UserHandle user = info.getUser();
+        return getKey(component.getPackageName(),
+                component.getClassName() + "@" + user.getIdentifier(),
+                info.getApplicationInfo().versionCode);
+    }
+
+    private String getKey(String packageName, String component, int versionCode) {
+        StringBuilder key = new StringBuilder(packageName).append(KEY_SEPARATOR);
+        if (component != null) {
+            key.append(component);
+        }
+        return key.append(KEY_SEPARATOR).append(versionCode)
+                .append(KEY_SEPARATOR).append(mDensity).toString();
+    }
+}
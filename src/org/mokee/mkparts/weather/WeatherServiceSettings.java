@@ -22,6 +22,7 @@ import android.content.ActivityNotFoundException;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
@@ -51,8 +52,11 @@ import android.widget.Toast;
 import com.android.internal.content.PackageMonitor;
 import com.android.internal.os.BackgroundThread;
 
+import org.mokee.mkparts.CachedSummaryProvider;
 import org.mokee.mkparts.R;
 import org.mokee.mkparts.SettingsPreferenceFragment;
+import org.mokee.mkparts.utils.AppIconCache;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -81,6 +85,8 @@ public class WeatherServiceSettings extends SettingsPreferenceFragment
     private PreferenceCategory mGeneralSettingsCategory;
     private PreferenceCategory mProvidersCategory;
     private ListPreference mTemperatureUnit;
+    // Identifies the latest load, older ones finishing late are dropped
+    private int mLoadGeneration;
 
     @Override
     public void onAttach(Activity activity) {
@@ -173,6 +179,7 @@ public class WeatherServiceSettings extends SettingsPreferenceFragment
 
     private static List<WeatherProviderServiceInfo> getInstalledServices(Context context) {
         final PackageManager pm = context.getPackageManager();
+        final AppIconCache iconCache = AppIconCache.get(context);
         final Intent intent = new Intent(WeatherProviderService.SERVICE_INTERFACE);
         List<ResolveInfo> resolveInfoList = pm.queryIntentServices(intent,
                 PackageManager.GET_SERVICES | PackageManager.GET_META_DATA);
@@ -196,8 +203,8 @@ public class WeatherServiceSettings extends SettingsPreferenceFragment
             serviceInfo.componentName = new ComponentName(resolveInfo.serviceInfo.packageName,
                     resolveInfo.serviceInfo.name);
             serviceInfo.isActive = serviceInfo.componentName.equals(activeService);
-            serviceInfo.caption = resolveInfo.loadLabel(pm);
-            serviceInfo.icon = resolveInfo.loadIcon(pm);
+            serviceInfo.caption = iconCache.getLabel(resolveInfo);
+            serviceInfo.icon = iconCache.getIcon(resolveInfo);
             serviceInfo.settingsComponentName = getSettingsComponent(pm, resolveInfo);
 
             weatherProviderServiceInfos.add(serviceInfo);
@@ -206,9 +213,28 @@ public class WeatherServiceSettings extends SettingsPreferenceFragment
     }
 
     private void updateAdapter() {
-        final List<WeatherProviderServiceInfo> weatherProviderServiceInfos =
-                getInstalledServices(getContext());
+        // Icons may have to be loaded from the packages, build the list in the background
+        final Context context = mContext.getApplicationContext();
+        final int generation = ++mLoadGeneration;
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<WeatherProviderServiceInfo> weatherProviderServiceInfos =
+                        getInstalledServices(context);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mLoadGeneration || !isAdded()) {
+                            return;
+                        }
+                        updateAdapter(weatherProviderServiceInfos);
+                    }
+                });
+            }
+        });
+    }
 
+    private void updateAdapter(List<WeatherProviderServiceInfo> weatherProviderServiceInfos) {
         final PreferenceScreen ps = getPreferenceScreen();
         if (!weatherProviderServiceInfos.isEmpty()) {
             if (ps.findPreference(PREFERENCE_GENERAL) == null) {
@@ -472,19 +498,54 @@ public class WeatherServiceSettings extends SettingsPreferenceFragment
         public ComponentName settingsComponentName;
     }
 
-    public static final SummaryProvider SUMMARY_PROVIDER = new SummaryProvider() {
+    public static final SummaryProvider SUMMARY_PROVIDER = new CachedSummaryProvider() {
         @Override
-        public String getSummary(Context context, String key) {
-            final List<WeatherProviderServiceInfo> infos = getInstalledServices(context);
-            if (infos != null && infos.size() > 0) {
-                for (WeatherProviderServiceInfo info : infos) {
-                    if (info.isActive) {
-                        Log.d(TAG, "mkparts: found active provider: " + info.caption);
-                        return String.valueOf(info.caption);
-                    }
-                }
+        protected Uri[] getTriggerUris() {
+            return new Uri[] {
+                    MKSettings.Secure.getUriFor(MKSettings.Secure.WEATHER_PROVIDER_SERVICE)
+            };
+        }
+
+        @Override
+        protected IntentFilter[] getTriggerFilters() {
+            // The active provider may be uninstalled or change its label
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addDataScheme("package");
+            return new IntentFilter[] { filter };
+        }
+
+        @Override
+        protected String computeSummary(Context context, String key) {
+            final CharSequence caption = getActiveServiceCaption(context);
+            if (caption != null) {
+                Log.d(TAG, "mkparts: found active provider: " + caption);
+                return String.valueOf(caption);
             }
             return context.getString(R.string.weather_settings_no_services_summary);
         }
     };
+
+    /**
+     * Resolves only the label of the active provider, without querying and loading
+     * every installed provider like {@link #getInstalledServices(Context)}.
+     */
+    private static CharSequence getActiveServiceCaption(Context context) {
+        final ComponentName activeService = getEnabledWeatherServiceProvider(context);
+        if (activeService == null) {
+            return null;
+        }
+        final PackageManager pm = context.getPackageManager();
+        final Intent intent = new Intent(WeatherProviderService.SERVICE_INTERFACE)
+                .setComponent(activeService);
+        final ResolveInfo resolveInfo = pm.resolveService(intent, 0);
+        if (resolveInfo == null || resolveInfo.serviceInfo == null
+                || !mokee.platform.Manifest.permission.BIND_WEATHER_PROVIDER_SERVICE.equals(
+                        resolveInfo.serviceInfo.permission)) {
+            return null;
+        }
+        return resolveInfo.loadLabel(pm);
+    }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2019 The MoKee Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mokee.mkparts.widget;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.LruCache;
+import android.view.Choreographer;
+import android.widget.ImageView;
+
+import org.mokee.mkparts.utils.AppIconCache;
+import org.mokee.mkparts.utils.BackgroundExecutor;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Loads application icons into the rows of a list, in the background.
+ *
+ * Only the rows being bound are requested, most recent first, along with a few rows
+ * prefetched around them. Requests of rows scrolled away are dropped before they are
+ * loaded. Loaded icons are set on the views still showing their package, all at once
+ * on the next frame, without rebinding the list.
+ *
+ * All methods must be called on the main thread.
+ */
+public class AppIconLoader {
+
+    private static final int MAX_PREFETCH = 16;
+    // About a few screens of rows, older ones are found in AppIconCache
+    private static final int MAX_ICONS = 64;
+
+    // The request each view waits for, whichever loader it belongs to
+    private static final WeakHashMap<ImageView, Request> sBoundViews = new WeakHashMap<>();
+
+    private final AppIconCache mIconCache;
+    private final Drawable mDefaultIcon;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Recently loaded icons, main thread only
+    private final LruCache<String, Drawable> mIcons = new LruCache<>(MAX_ICONS);
+
+    private final Object mLock = new Object();
+    // Both most recent first
+    private final ArrayDeque<Request> mQueue = new ArrayDeque<>();
+    private final ArrayDeque<Request> mPrefetchQueue = new ArrayDeque<>();
+    private final ArrayMap<String, Drawable> mResults = new ArrayMap<>();
+    private boolean mLoading;
+    private boolean mFrameScheduled;
+    private boolean mReleased;
+
+    private static final class Request {
+        final AppIconLoader loader;
+        final String packageName;
+        final ApplicationInfo info;
+
+        Request(AppIconLoader loader, String packageName, ApplicationInfo info) {
+            this.loader = loader;
+            this.packageName = packageName;
+            this.info = info;
+        }
+    }
+
+    public AppIconLoader(Context context, Drawable defaultIcon) {
+        mIconCache = AppIconCache.get(context);
+        mDefaultIcon = defaultIcon;
+    }
+
+    /**
+     * Shows the icon of a package in a view, loading it first if needed.
+     */
+    public void loadIcon(ImageView view, String packageName) {
+        load(view, new Request(this, packageName, null));
+    }
+
+    public void loadIcon(ImageView view, ApplicationInfo info) {
+        load(view, new Request(this, info.packageName, info));
+    }
+
+    /**
+     * Loads the icon of a package likely to be shown soon, after the visible ones.
+     */
+    public void prefetch(String packageName) {
+        if (mIcons.get(packageName) != null) {
+            return;
+        }
+        enqueue(new Request(this, packageName, null), false);
+    }
+
+    /**
+     * Stops waiting for an icon, for a view now showing something else.
+     */
+    public static void cancel(ImageView view) {
+        final Request previous = sBoundViews.remove(view);
+        if (previous != null) {
+            previous.loader.dequeue(previous.packageName);
+        }
+    }
+
+    /**
+     * Drops all pending requests. The loader must not be used anymore.
+     */
+    public void release() {
+        synchronized (mLock) {
+            mReleased = true;
+            mQueue.clear();
+            mPrefetchQueue.clear();
+            mResults.clear();
+        }
+        final Iterator<Request> it = sBoundViews.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().loader == this) {
+                it.remove();
+            }
+        }
+    }
+
+    private void load(ImageView view, Request request) {
+        final Drawable icon = mIcons.get(request.packageName);
+        final Request previous = sBoundViews.get(view);
+        if (previous != null && previous.loader == this
+                && previous.packageName.equals(request.packageName) && icon == null) {
+            // Already waiting for this icon
+            return;
+        }
+        cancel(view);
+
+        if (icon != null) {
+            view.setImageDrawable(icon);
+            return;
+        }
+        view.setImageDrawable(mDefaultIcon);
+        sBoundViews.put(view, request);
+        enqueue(request, true);
+    }
+
+    private void enqueue(Request request, boolean visible) {
+        synchronized (mLock) {
+            if (mReleased) return;
+            if (visible) {
+                removeQueuedLocked(mQueue, request.packageName);
+                removeQueuedLocked(mPrefetchQueue, request.packageName);
+                mQueue.addFirst(request);
+            } else {
+                if (isQueuedLocked(mQueue, request.packageName)) return;
+                removeQueuedLocked(mPrefetchQueue, request.packageName);
+                mPrefetchQueue.addFirst(request);
+                if (mPrefetchQueue.size() > MAX_PREFETCH) {
+                    mPrefetchQueue.removeLast();
+                }
+            }
+            if (!mLoading) {
+                mLoading = true;
+                BackgroundExecutor.get().execute(mLoadRunnable);
+            }
+        }
+    }
+
+    private void dequeue(String packageName) {
+        for (Request request : sBoundViews.values()) {
+            if (request.loader == this && request.packageName.equals(packageName)) {
+                // Another row still shows it
+                return;
+            }
+        }
+        synchronized (mLock) {
+            removeQueuedLocked(mQueue, packageName);
+        }
+    }
+
+    private static boolean isQueuedLocked(ArrayDeque<Request> queue, String packageName) {
+        for (Request request : queue) {
+            if (request.packageName.equals(packageName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removeQueuedLocked(ArrayDeque<Request> queue, String packageName) {
+        final Iterator<Request> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().packageName.equals(packageName)) {
+                it.remove();
+            }
+        }
+    }
+
+    private final Runnable mLoadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                final Request request;
+                synchronized (mLock) {
+                    request = !mQueue.isEmpty() ? mQueue.pollFirst()
+                            : mPrefetchQueue.pollFirst();
+                    if (request == null) {
+                        mLoading = false;
+                        return;
+                    }
+                }
+
+                Drawable icon = request.info != null
+                        ? mIconCache.getIcon(request.info)
+                        : mIconCache.getIcon(request.packageName);
+                if (icon == null) {
+                    icon = mDefaultIcon;
+                }
+
+                synchronized (mLock) {
+                    if (mReleased) continue;
+                    mResults.put(request.packageName, icon);
+                    if (!mFrameScheduled) {
+                        mFrameScheduled = true;
+                        mHandler.post(mScheduleFrame);
+                    }
+                }
+            }
+        }
+    };
+
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            final ArrayMap<String, Drawable> results;
+            synchronized (mLock) {
+                results = new ArrayMap<>(mResults);
+                mResults.clear();
+                mFrameScheduled = false;
+            }
+            for (int i = 0; i < results.size(); i++) {
+                mIcons.put(results.keyAt(i), results.valueAt(i));
+            }
+
+            final Iterator<Map.Entry<ImageView, Request>> it = sBoundViews.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<ImageView, Request> entry = it.next();
+                final Request request = entry.getValue();
+                if (request.loader != AppIconLoader.this) continue;
+                // Large batches may not all fit in the cache
+                final Drawable icon = results.get(request.packageName);
+                if (icon != null) {
+                    entry.getKey().setImageDrawable(icon);
+                    it.remove();
+                }
+            }
+        }
+    };
+}
@@ -26,6 +26,7 @@ import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.Message;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -34,16 +35,19 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import org.mokee.mkparts.R;
+import org.mokee.mkparts.utils.AppIconCache;
+import org.mokee.mkparts.utils.BackgroundExecutor;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeSet;
 
 public class PackageListAdapter extends BaseAdapter implements Runnable {
     private PackageManager mPm;
+    private AppIconCache mIconCache;
     private LayoutInflater mInflater;
-    private List<PackageItem> mInstalledPackages = new LinkedList<PackageItem>();
+    // sorted by title, replaced as a whole once loaded; only accessed on the main thread
+    private PackageItem[] mInstalledPackages = new PackageItem[0];
 
     // Packages which don't have launcher icons, but which we want to show nevertheless
     private static final String[] PACKAGE_WHITELIST = new String[] {
@@ -55,13 +59,7 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     private final Handler mHandler = new Handler() {
         @Override
         public void handleMessage(Message msg) {
-            PackageItem item = (PackageItem) msg.obj;
-            int index = Collections.binarySearch(mInstalledPackages, item);
-            if (index < 0) {
-                mInstalledPackages.add(-index - 1, item);
-            } else {
-                mInstalledPackages.get(index).activityTitles.addAll(item.activityTitles);
-            }
+            mInstalledPackages = (PackageItem[]) msg.obj;
             notifyDataSetChanged();
         }
     };
@@ -87,30 +85,25 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
 
     public PackageListAdapter(Context context) {
         mPm = context.getPackageManager();
+        mIconCache = AppIconCache.get(context);
         mInflater = LayoutInflater.from(context);
         reloadList();
     }
 
     @Override
     public int getCount() {
-        synchronized (mInstalledPackages) {
-            return mInstalledPackages.size();
-        }
+        return mInstalledPackages.length;
     }
 
     @Override
     public PackageItem getItem(int position) {
-        synchronized (mInstalledPackages) {
-            return mInstalledPackages.get(position);
-        }
+        return mInstalledPackages[position];
     }
 
     @Override
     public long getItemId(int position) {
-        synchronized (mInstalledPackages) {
-            // packageName is guaranteed to be unique in mInstalledPackages
-            return mInstalledPackages.get(position).packageName.hashCode();
-        }
+        // packageName is guaranteed to be unique in mInstalledPackages
+        return mInstalledPackages[position].packageName.hashCode();
     }
 
     @Override
@@ -149,8 +142,7 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     }
 
     private void reloadList() {
-        mInstalledPackages.clear();
-        new Thread(this).start();
+        BackgroundExecutor.get().execute(this);
     }
 
     @Override
@@ -158,25 +150,37 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
         final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
         mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
         List<ResolveInfo> installedAppsInfo = mPm.queryIntentActivities(mainIntent, 0);
+        ArrayMap<String, PackageItem> items = new ArrayMap<String, PackageItem>();
 
         for (ResolveInfo info : installedAppsInfo) {
             ApplicationInfo appInfo = info.activityInfo.applicationInfo;
-            final PackageItem item = new PackageItem(appInfo.packageName,
-                    appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-            item.activityTitles.add(info.loadLabel(mPm));
-            mHandler.obtainMessage(0, item).sendToTarget();
+            PackageItem item = items.get(appInfo.packageName);
+            if (item == null) {
+                item = new PackageItem(appInfo.packageName,
+                        mIconCache.getLabel(appInfo), mIconCache.getIcon(appInfo));
+                items.put(appInfo.packageName, item);
+            }
+            item.activityTitles.add(mIconCache.getLabel(info));
         }
 
         for (String packageName : PACKAGE_WHITELIST) {
+            if (items.containsKey(packageName)) {
+                continue;
+            }
             try {
                 ApplicationInfo appInfo = mPm.getApplicationInfo(packageName, 0);
                 final PackageItem item = new PackageItem(appInfo.packageName,
-                        appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-                mHandler.obtainMessage(0, item).sendToTarget();
+                        mIconCache.getLabel(appInfo), mIconCache.getIcon(appInfo));
+                items.put(packageName, item);
             } catch (PackageManager.NameNotFoundException ignored) {
                 // package not present, so nothing to add -> ignore it
             }
         }
+
+        // sort once and publish the whole list at once
+        PackageItem[] sorted = items.values().toArray(new PackageItem[items.size()]);
+        Arrays.sort(sorted);
+        mHandler.obtainMessage(0, sorted).sendToTarget();
     }
 
     private static class ViewHolder {